@@ -0,0 +1,53 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * RelaxKernel using the JDK's SIMD vector API. Each step checks as many edges
+ * as fit in the widest vector the processor supports: it loads their weights,
+ * adds the base distance, gathers the stamp and distance entries of their far
+ * ends, and compares them all at once. Only the lanes that pass are handed
+ * back to the workspace.
+ *
+ * Needs JDK 16 or later. Compile and run with the incubator module, e.g.
+ *     javac --add-modules jdk.incubator.vector -d bin src/*.java src-vector/*.java
+ *     java --add-modules jdk.incubator.vector -cp bin RelaxationBenchmark
+ */
+class VectorRelaxKernel implements RelaxKernel {
+	private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+	public int pick(int base, int[] ends, int[] weights, int from, int to, int maxCost, int[] stamp,
+			int[] distance, int epoch, int[] picked) {
+		int count = 0;
+		IntVector baseVector = IntVector.broadcast(SPECIES, base);
+		int i = from;
+		for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+			IntVector candidate = IntVector.fromArray(SPECIES, weights, i).add(baseVector);
+			IntVector stamps = IntVector.fromArray(SPECIES, stamp, 0, ends, i);
+			IntVector distances = IntVector.fromArray(SPECIES, distance, 0, ends, i);
+
+			// A vertex not stamped in this search has not been reached, so any
+			// candidate within the budget improves on it
+			VectorMask<Integer> better = stamps.compare(VectorOperators.NE, epoch)
+					.or(candidate.compare(VectorOperators.LT, distances));
+			VectorMask<Integer> pass = better.and(candidate.compare(VectorOperators.GE, 0))
+					.and(candidate.compare(VectorOperators.LE, maxCost));
+
+			// Hand back the passing lanes in edge order
+			for (long lanes = pass.toLong(); lanes != 0; lanes &= lanes - 1) {
+				picked[count++] = i + Long.numberOfTrailingZeros(lanes);
+			}
+		}
+
+		// Check the edges left over one at a time
+		for (; i < to; i++) {
+			int end = ends[i];
+			int candidate = base + weights[i];
+			if (candidate >= 0 && candidate <= maxCost && (stamp[end] != epoch || candidate < distance[end])) {
+				picked[count++] = i;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,380 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Answers shortest path queries on a MyGraph asynchronously, coalescing
+ * queries that share a start vertex. Queries wait in a queue for up to a
+ * batching window; a background thread then groups the waiting queries by
+ * start vertex and hands each group to an executor, which runs one search
+ * serving every destination in the group at once. MyGraph searches are
+ * thread-safe, so the groups of a batch run in parallel.
+ *
+ * The project targets Java 6, which has no CompletableFuture, so queries
+ * return a plain Future. Callers that do not want to block on get() can pass
+ * a PathListener instead, which is told the answer as soon as it is known.
+ */
+public class AsyncPathFinder {
+	private final MyGraph graph;
+	private final long windowNanos;
+	private final int maxBatch;
+
+	// Runs the searches, and whether this path finder made it and so must
+	// shut it down
+	private final Executor executor;
+	private final boolean ownsExecutor;
+
+	// Queries waiting to be batched
+	private final BlockingQueue<Query> queue = new LinkedBlockingQueue<Query>();
+
+	// Thread that batches the queries and hands out the searches
+	private final Thread dispatcher;
+	private volatile boolean running = true;
+
+	// Held while queueing a query or stopping, so no query can be queued
+	// after shutdown has taken the last ones from the queue
+	private final Object submitLock = new Object();
+
+	// Counts for the coalescing ratio
+	private final AtomicLong queries = new AtomicLong();
+	private final AtomicLong answered = new AtomicLong();
+	private final AtomicLong searches = new AtomicLong();
+
+	/**
+	 * Construct a new path finder that searches on one thread per available
+	 * processor, and start its background thread
+	 *
+	 * @param graph
+	 *            the graph to find paths in
+	 * @param windowMillis
+	 *            how long the first query of a batch may wait for others
+	 * @param maxBatch
+	 *            the most queries in one batch; a full batch runs at once
+	 * @throws IllegalArgumentException
+	 *             if graph is null, windowMillis is negative or maxBatch is
+	 *             not positive
+	 */
+	public AsyncPathFinder(MyGraph graph, long windowMillis, int maxBatch) {
+		this(graph, windowMillis, maxBatch, null);
+	}
+
+	/**
+	 * Construct a new path finder that searches on the given executor, and
+	 * start its background thread
+	 *
+	 * @param graph
+	 *            the graph to find paths in
+	 * @param windowMillis
+	 *            how long the first query of a batch may wait for others
+	 * @param maxBatch
+	 *            the most queries in one batch; a full batch runs at once
+	 * @param executor
+	 *            runs one search per group of queries; it is not shut down by
+	 *            shutdown(). If null, the path finder makes a pool with one
+	 *            thread per available processor and shuts it down itself.
+	 * @throws IllegalArgumentException
+	 *             if graph is null, windowMillis is negative or maxBatch is
+	 *             not positive
+	 */
+	public AsyncPathFinder(MyGraph graph, long windowMillis, int maxBatch, Executor executor) {
+		if (graph == null || windowMillis < 0 || maxBatch < 1) {
+			throw new IllegalArgumentException();
+		}
+		this.graph = graph;
+		this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+		this.maxBatch = maxBatch;
+		if (executor != null) {
+			this.executor = executor;
+			this.ownsExecutor = false;
+		} else {
+			this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+					new ThreadFactory() {
+						public Thread newThread(Runnable task) {
+							Thread thread = new Thread(task, "AsyncPathFinder-search");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			this.ownsExecutor = true;
+		}
+
+		dispatcher = new Thread("AsyncPathFinder") {
+			public void run() {
+				dispatch();
+			}
+		};
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+	}
+
+	/**
+	 * Queue a query for the shortest path from a to b
+	 *
+	 * @param a
+	 *            the starting vertex
+	 * @param b
+	 *            the destination vertex
+	 * @return a future for the path, in the same form as returned by
+	 *         MyGraph.shortestPath, or for null if b is not reachable from a.
+	 *         The future fails with an IllegalArgumentException if a or b does
+	 *         not exist.
+	 * @throws IllegalStateException
+	 *             if the path finder has been shut down
+	 */
+	public Future<Path> shortestPathAsync(Vertex a, Vertex b) {
+		return shortestPathAsync(a, b, null);
+	}
+
+	/**
+	 * Queue a query for the shortest path from a to b, and tell a listener
+	 * the answer once it is known
+	 *
+	 * @param a
+	 *            the starting vertex
+	 * @param b
+	 *            the destination vertex
+	 * @param listener
+	 *            told the answer on the thread that finds it, or null
+	 * @return a future for the path, as for shortestPathAsync(a, b)
+	 * @throws IllegalStateException
+	 *             if the path finder has been shut down
+	 */
+	public Future<Path> shortestPathAsync(Vertex a, Vertex b, PathListener listener) {
+		Query query = new Query(a, b, listener);
+		synchronized (submitLock) {
+			if (!running) {
+				throw new IllegalStateException("shut down");
+			}
+			queries.incrementAndGet();
+			queue.add(query);
+		}
+		return query;
+	}
+
+	/**
+	 * Get the number of queries per search run so far. 1 means no query has
+	 * shared a search; higher is better.
+	 *
+	 * @return the coalescing ratio, or 0 before any search has run
+	 */
+	public double coalescingRatio() {
+		long searchCount = searches.get();
+		return (searchCount == 0) ? 0 : (double) answered.get() / searchCount;
+	}
+
+	/**
+	 * Get the number of queries made so far
+	 */
+	public long queryCount() {
+		return queries.get();
+	}
+
+	/**
+	 * Get the number of searches run so far
+	 */
+	public long searchCount() {
+		return searches.get();
+	}
+
+	/**
+	 * Stop taking queries and stop the background thread once every query
+	 * already queued has been handed out. When the path finder made its own
+	 * executor, also wait for those queries to be answered.
+	 *
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the queued queries
+	 */
+	public void shutdown() throws InterruptedException {
+		synchronized (submitLock) {
+			running = false;
+		}
+		dispatcher.join();
+
+		// The dispatcher empties the queue before it stops, and nothing can
+		// be queued once running is false, but hand out anything left anyway
+		List<Query> rest = new ArrayList<Query>();
+		queue.drainTo(rest);
+		answer(rest);
+
+		if (ownsExecutor) {
+			ExecutorService pool = (ExecutorService) executor;
+			pool.shutdown();
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Batches queries and hands them out until shut down with nothing queued
+	 */
+	private void dispatch() {
+		List<Query> batch = new ArrayList<Query>();
+		while (running || !queue.isEmpty()) {
+			try {
+				// Wait for the first query of a batch
+				Query first = queue.poll(10, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+
+				// Gather more until the window closes or the batch is full
+				long deadline = System.nanoTime() + windowNanos;
+				while (batch.size() < maxBatch) {
+					Query next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+				}
+			} catch (InterruptedException e) {
+				// Answer what has been gathered, shutdown decides when to stop
+			}
+			answer(batch);
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Groups the queries in the batch by start vertex and hands one search
+	 * per group to the executor
+	 */
+	private void answer(List<Query> batch) {
+		// Group the queries by start vertex, keeping arrival order
+		Map<Vertex, List<Query>> groups = new LinkedHashMap<Vertex, List<Query>>();
+		for (Query query : batch) {
+			List<Query> group = groups.get(query.from);
+			if (group == null) {
+				group = new ArrayList<Query>();
+				groups.put(query.from, group);
+			}
+			group.add(query);
+		}
+
+		for (final Map.Entry<Vertex, List<Query>> group : groups.entrySet()) {
+			Runnable search = new Runnable() {
+				public void run() {
+					search(group.getKey(), group.getValue());
+				}
+			};
+			try {
+				executor.execute(search);
+			} catch (RejectedExecutionException e) {
+				// The executor is full or shut down, so search here rather
+				// than leave the queries waiting forever
+				search.run();
+			}
+		}
+	}
+
+	/**
+	 * Runs one search from a start vertex and completes every query in its
+	 * group
+	 */
+	private void search(Vertex from, List<Query> group) {
+		List<Vertex> targets = new ArrayList<Vertex>();
+		for (Query query : group) {
+			targets.add(query.to);
+		}
+		answered.addAndGet(group.size());
+		try {
+			Map<Vertex, Path> paths = graph.shortestPaths(from, targets);
+			searches.incrementAndGet();
+			for (Query query : group) {
+				query.complete(paths.get(query.to));
+			}
+		} catch (RuntimeException e) {
+			// Some vertex does not exist, which shortestPaths finds before
+			// searching, so answer the group one query at a time to fail
+			// only the queries that used it. Each of those is a search of
+			// its own and shares nothing.
+			searches.addAndGet(group.size());
+			for (Query query : group) {
+				try {
+					query.complete(graph.shortestPath(query.from, query.to));
+				} catch (RuntimeException failure) {
+					query.fail(failure);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Told the answer to a query once it is known
+	 */
+	public interface PathListener {
+		/**
+		 * Called with the path found, in the same form as returned by
+		 * MyGraph.shortestPath, or null if the destination is not reachable
+		 */
+		void pathFound(Path path);
+
+		/**
+		 * Called instead of pathFound if the query failed or was cancelled
+		 *
+		 * @param failure
+		 *            why, e.g. an IllegalArgumentException if a vertex does
+		 *            not exist
+		 */
+		void pathFailed(Throwable failure);
+	}
+
+	/**
+	 * A queued query and the future for its answer
+	 */
+	private static class Query extends FutureTask<Path> {
+		final Vertex from;
+		final Vertex to;
+		final PathListener listener;
+
+		Query(Vertex from, Vertex to, PathListener listener) {
+			// The task itself never runs, the dispatcher completes it
+			super(new Callable<Path>() {
+				public Path call() {
+					throw new IllegalStateException("completed by the dispatcher");
+				}
+			});
+			this.from = from;
+			this.to = to;
+			this.listener = listener;
+		}
+
+		void complete(Path path) {
+			set(path);
+		}
+
+		void fail(Throwable failure) {
+			setException(failure);
+		}
+
+		/**
+		 * Tells the listener, if any, once the query is complete
+		 */
+		protected void done() {
+			if (listener == null) {
+				return;
+			}
+			try {
+				Path path;
+				try {
+					path = get();
+				} catch (ExecutionException e) {
+					listener.pathFailed(e.getCause());
+					return;
+				} catch (CancellationException e) {
+					listener.pathFailed(e);
+					return;
+				} catch (InterruptedException e) {
+					// Cannot happen, the query is already complete
+					Thread.currentThread().interrupt();
+					return;
+				}
+				listener.pathFound(path);
+			} catch (RuntimeException e) {
+				// A failing listener must not stop the rest of the group from
+				// being answered, so report it the way an uncaught one would be
+				Thread thread = Thread.currentThread();
+				thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+			}
+		}
+	}
+}
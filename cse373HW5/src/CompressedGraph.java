@@ -0,0 +1,442 @@
+import java.util.*;
+
+/**
+ * A read-only graph that stores its adjacency in flat arrays indexed by an
+ * internal vertex id, for graphs too large to keep as lists of Vertex objects.
+ * Assumes that we do not have negative cost edges in the graph.
+ *
+ * In the compressed layout each vertex's neighbors are sorted by id, the ids
+ * are stored as differences from the previous neighbor, and both the
+ * differences and the weights are packed as variable-length integers (7 bits
+ * per byte, high bit set on every byte but the last). Searches decode each
+ * neighbor list as they relax it. The uncompressed layout keeps plain int
+ * arrays of neighbor ids and weights, and exists mostly to compare against.
+ */
+public class CompressedGraph implements Graph {
+	// Vertices by internal id, and the id of each vertex
+	private Vertex[] vertexArray;
+	private Map<Vertex, Integer> vertexIds;
+
+	// Where each vertex's neighbors start: a byte position into packed when
+	// compressed, or an index into targets and weights when not. The entry
+	// after the last vertex marks the end of the data.
+	private int[] offsets;
+
+	// Compressed layout: delta-encoded neighbor ids and weights as varints
+	private byte[] packed;
+
+	// Uncompressed layout: neighbor ids and weights side by side
+	private int[] targets;
+	private int[] weights;
+
+	private boolean compressed;
+	private int edgeCount;
+
+	// Scratch space for the searches run by each thread, so a query only
+	// touches the vertices it reaches
+	private ThreadLocal<SearchWorkspace> workspaces;
+
+	/**
+	 * Creates a CompressedGraph object with the given collection of vertices
+	 * and the given collection of edges.
+	 *
+	 * @param v
+	 *            a collection of the vertices in this graph
+	 * @param e
+	 *            a collection of the edges in this graph
+	 * @param compressed
+	 *            true to delta and varint encode the adjacency, false to keep
+	 *            it as plain int arrays
+	 * @throws IllegalArgumentException
+	 *             if an edge has a negative weight or an endpoint that is not
+	 *             in the vertex collection, or if two edges join the same
+	 *             vertices in the same direction with different weights
+	 */
+	public CompressedGraph(Collection<Vertex> v, Collection<Edge> e, boolean compressed) {
+		this.compressed = compressed;
+
+		// Number the vertices in the order given, ignoring repeats
+		vertexIds = new HashMap<Vertex, Integer>();
+		List<Vertex> vertexList = new ArrayList<Vertex>();
+		for (Vertex curVertex : v) {
+			if (!vertexIds.containsKey(curVertex)) {
+				vertexIds.put(curVertex, vertexList.size());
+				vertexList.add(new Vertex(curVertex.getLabel()));
+			}
+		}
+		vertexArray = vertexList.toArray(new Vertex[vertexList.size()]);
+		int n = vertexArray.length;
+
+		// Check the edges and count the out-degree of each vertex
+		int[] degree = new int[n + 1];
+		for (Edge curEdge : e) {
+			if (curEdge.getWeight() < 0) {
+				throw new IllegalArgumentException("negative weight: " + curEdge);
+			}
+			if (!vertexIds.containsKey(curEdge.getSource())
+					|| !vertexIds.containsKey(curEdge.getDestination())) {
+				throw new IllegalArgumentException("unknown vertex: " + curEdge);
+			}
+			degree[vertexIds.get(curEdge.getSource())]++;
+		}
+		edgeCount = e.size();
+
+		// Each vertex's neighbors start where the previous vertex's end
+		int[] start = new int[n + 1];
+		for (int i = 0; i < n; i++) {
+			start[i + 1] = start[i] + degree[i];
+		}
+
+		// Bucket every edge under its source as (neighbor id, weight)
+		long[] entries = new long[edgeCount];
+		int[] next = new int[n];
+		System.arraycopy(start, 0, next, 0, n);
+		for (Edge curEdge : e) {
+			int from = vertexIds.get(curEdge.getSource());
+			int to = vertexIds.get(curEdge.getDestination());
+			entries[next[from]++] = ((long) to << 32) | curEdge.getWeight();
+		}
+
+		// Sort each vertex's neighbors by id so the differences stay small.
+		// Edges to the same neighbor then sit side by side, so a pair that
+		// disagrees on the weight is caught here.
+		for (int i = 0; i < n; i++) {
+			Arrays.sort(entries, start[i], start[i + 1]);
+			for (int j = start[i] + 1; j < start[i + 1]; j++) {
+				if ((entries[j] >>> 32) == (entries[j - 1] >>> 32) && entries[j] != entries[j - 1]) {
+					throw new IllegalArgumentException("conflicting weights from " + vertexArray[i] + " to "
+							+ vertexArray[(int) (entries[j] >>> 32)]);
+				}
+			}
+		}
+
+		if (compressed) {
+			encode(entries, start);
+		} else {
+			offsets = start;
+			targets = new int[edgeCount];
+			weights = new int[edgeCount];
+			for (int i = 0; i < edgeCount; i++) {
+				targets[i] = (int) (entries[i] >>> 32);
+				weights[i] = (int) entries[i];
+			}
+		}
+
+		final int vertexCount = n;
+		workspaces = new ThreadLocal<SearchWorkspace>() {
+			protected SearchWorkspace initialValue() {
+				return new SearchWorkspace(vertexCount);
+			}
+		};
+	}
+
+	/**
+	 * Packs sorted neighbor entries into the compressed layout
+	 *
+	 * @param entries
+	 *            (neighbor id, weight) pairs, grouped and sorted by source
+	 * @param start
+	 *            where each source's entries start in entries
+	 */
+	private void encode(long[] entries, int[] start) {
+		int n = vertexArray.length;
+		offsets = new int[n + 1];
+
+		// Most ids and weights fit in a byte or two, so start small and grow
+		byte[] out = new byte[Math.max(16, edgeCount * 3)];
+		int pos = 0;
+		for (int i = 0; i < n; i++) {
+			offsets[i] = pos;
+			int previous = 0;
+			for (int j = start[i]; j < start[i + 1]; j++) {
+				int to = (int) (entries[j] >>> 32);
+				int w = (int) entries[j];
+
+				// Make sure there is room for two maximum length varints
+				if (pos + 10 > out.length) {
+					out = Arrays.copyOf(out, out.length * 2);
+				}
+				pos = writeVarint(out, pos, to - previous);
+				pos = writeVarint(out, pos, w);
+				previous = to;
+			}
+		}
+		offsets[n] = pos;
+		packed = Arrays.copyOf(out, pos);
+	}
+
+	/**
+	 * Writes a nonnegative int as a varint
+	 *
+	 * @return the position just past the written bytes
+	 */
+	private static int writeVarint(byte[] out, int pos, int value) {
+		while ((value & ~0x7F) != 0) {
+			out[pos++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out[pos++] = (byte) value;
+		return pos;
+	}
+
+	/**
+	 * Return the collection of vertices of this graph
+	 *
+	 * @return the vertices as a collection (which is anything iterable)
+	 */
+	public Collection<Vertex> vertices() {
+		// Create and return a copy of the vertices to preserve the local copy
+		Collection<Vertex> verticesCopy = new ArrayList<Vertex>();
+		for (Vertex curVertex : vertexArray) {
+			verticesCopy.add(new Vertex(curVertex.getLabel()));
+		}
+		return verticesCopy;
+	}
+
+	/**
+	 * Return the collection of edges of this graph, grouped by source and
+	 * sorted by destination within each source
+	 *
+	 * @return the edges as a collection (which is anything iterable)
+	 */
+	public Collection<Edge> edges() {
+		Collection<Edge> edgesCopy = new ArrayList<Edge>();
+		int[] neighbor = new int[2];
+		for (int i = 0; i < vertexArray.length; i++) {
+			int pos = offsets[i];
+			int previous = 0;
+			while (pos < offsets[i + 1]) {
+				pos = readNeighbor(pos, previous, neighbor);
+				previous = neighbor[0];
+				edgesCopy.add(new Edge(vertexArray[i], vertexArray[neighbor[0]], neighbor[1]));
+			}
+		}
+		return edgesCopy;
+	}
+
+	/**
+	 * Return a collection of vertices adjacent to a given vertex v. i.e., the
+	 * set of all vertices w where edges v -> w exist in the graph. Return an
+	 * empty collection if there are no adjacent vertices.
+	 *
+	 * @param v
+	 *            one of the vertices in the graph
+	 * @return an iterable collection of vertices adjacent to v in the graph
+	 * @throws IllegalArgumentException
+	 *             if v does not exist.
+	 */
+	public Collection<Vertex> adjacentVertices(Vertex v) {
+		int id = idOf(v);
+		Collection<Vertex> adjacent = new ArrayList<Vertex>();
+		int[] neighbor = new int[2];
+		int pos = offsets[id];
+		int previous = 0;
+		while (pos < offsets[id + 1]) {
+			pos = readNeighbor(pos, previous, neighbor);
+			previous = neighbor[0];
+			adjacent.add(vertexArray[neighbor[0]]);
+		}
+		return adjacent;
+	}
+
+	/**
+	 * Test whether vertex b is adjacent to vertex a (i.e. a -> b) in a directed
+	 * graph. Assumes that we do not have negative cost edges in the graph.
+	 *
+	 * @param a
+	 *            one vertex
+	 * @param b
+	 *            another vertex
+	 * @return cost of edge if there is a directed edge from a to b in the
+	 *         graph, return -1 otherwise.
+	 * @throws IllegalArgumentException
+	 *             if a or b do not exist.
+	 */
+	public int edgeCost(Vertex a, Vertex b) {
+		int from = idOf(a);
+		int to = idOf(b);
+
+		// Neighbors are sorted, so stop once we pass b
+		int[] neighbor = new int[2];
+		int pos = offsets[from];
+		int previous = 0;
+		while (pos < offsets[from + 1]) {
+			pos = readNeighbor(pos, previous, neighbor);
+			previous = neighbor[0];
+			if (neighbor[0] == to) {
+				return neighbor[1];
+			} else if (neighbor[0] > to) {
+				break;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the shortest path from a to b in the graph, or null if there is
+	 * no such path. Assumes all edge weights are nonnegative. Uses Dijkstra's
+	 * algorithm with a binary heap, stopping once b is settled. The search runs
+	 * in the calling thread's reusable workspace, so its setup does not grow
+	 * with the size of the graph and the query time is mostly decoding and
+	 * relaxing.
+	 *
+	 * @param a
+	 *            the starting vertex
+	 * @param b
+	 *            the destination vertex
+	 * @return a Path in the same form as MyGraph.shortestPath: the vertices
+	 *         from b back to, but not including, a, and the cost of the path.
+	 *         Returns null if b is not reachable from a.
+	 * @throws IllegalArgumentException
+	 *             if a or b does not exist.
+	 */
+	public Path shortestPath(Vertex a, Vertex b) {
+		int from = idOf(a);
+		int to = idOf(b);
+
+		// Check simplest case when begin point and end point are the same
+		if (from == to) {
+			List<Vertex> shortList = new ArrayList<Vertex>();
+			shortList.add(vertexArray[from]);
+			return new Path(shortList, 0);
+		}
+
+		SearchWorkspace workspace = workspaces.get();
+		workspace.begin();
+		DistanceHeap heap = workspace.heap();
+		workspace.reach(from, 0, -1);
+		while (!heap.isEmpty()) {
+			int v = DistanceHeap.idOf(heap.removeMin());
+
+			// Skip stale entries for vertices already settled
+			if (workspace.isSettled(v)) {
+				continue;
+			}
+			workspace.settle(v);
+			if (v == to) {
+				break;
+			}
+
+			// Relax each neighbor as it is decoded, ignoring sums that
+			// overflow
+			int base = workspace.distance(v);
+			if (compressed) {
+				int pos = offsets[v];
+				int end = offsets[v + 1];
+				int adj = 0;
+				while (pos < end) {
+					// Inline varint decode of the id difference...
+					int b0 = packed[pos++];
+					int delta = b0 & 0x7F;
+					for (int shift = 7; b0 < 0; shift += 7) {
+						b0 = packed[pos++];
+						delta |= (b0 & 0x7F) << shift;
+					}
+					adj += delta;
+
+					// ...and of the weight
+					b0 = packed[pos++];
+					int w = b0 & 0x7F;
+					for (int shift = 7; b0 < 0; shift += 7) {
+						b0 = packed[pos++];
+						w |= (b0 & 0x7F) << shift;
+					}
+
+					int cost = base + w;
+					if (cost >= 0 && cost < workspace.distance(adj)) {
+						workspace.reach(adj, cost, v);
+					}
+				}
+			} else {
+				for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+					int adj = targets[i];
+					int cost = base + weights[i];
+					if (cost >= 0 && cost < workspace.distance(adj)) {
+						workspace.reach(adj, cost, v);
+					}
+				}
+			}
+		}
+
+		// Return a null path if b was never reached
+		if (!workspace.isSettled(to)) {
+			return null;
+		}
+
+		// Walk back from b until the beginning vertex is reached
+		List<Vertex> shortList = new ArrayList<Vertex>();
+		for (int temp = to; temp != from; temp = workspace.previous(temp)) {
+			shortList.add(vertexArray[temp]);
+		}
+		return new Path(shortList, workspace.distance(to));
+	}
+
+	/**
+	 * Get whether the adjacency is stored compressed
+	 *
+	 * @return true if neighbor ids and weights are delta and varint encoded
+	 */
+	public boolean isCompressed() {
+		return compressed;
+	}
+
+	/**
+	 * Get the number of bytes held by the adjacency arrays. This leaves out
+	 * the vertex objects and label map, which are the same in both layouts.
+	 *
+	 * @return the size of the offsets and neighbor arrays in bytes
+	 */
+	public long adjacencyBytes() {
+		long bytes = 4L * offsets.length;
+		if (compressed) {
+			bytes += packed.length;
+		} else {
+			bytes += 4L * targets.length + 4L * weights.length;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Decodes one neighbor starting at the given position
+	 *
+	 * @param pos
+	 *            where the neighbor starts
+	 * @param previous
+	 *            the id of the neighbor before it, or 0 for the first one
+	 * @param neighbor
+	 *            filled in with the neighbor id and the edge weight
+	 * @return the position of the next neighbor
+	 */
+	private int readNeighbor(int pos, int previous, int[] neighbor) {
+		if (!compressed) {
+			neighbor[0] = targets[pos];
+			neighbor[1] = weights[pos];
+			return pos + 1;
+		}
+		for (int i = 0; i < 2; i++) {
+			int b0 = packed[pos++];
+			int value = b0 & 0x7F;
+			for (int shift = 7; b0 < 0; shift += 7) {
+				b0 = packed[pos++];
+				value |= (b0 & 0x7F) << shift;
+			}
+			neighbor[i] = value;
+		}
+		neighbor[0] += previous;
+		return pos;
+	}
+
+	/**
+	 * Finds the internal id of a vertex
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the vertex does not exist.
+	 */
+	private int idOf(Vertex v) {
+		Integer id = vertexIds.get(v);
+		if (id == null) {
+			throw new IllegalArgumentException();
+		}
+		return id;
+	}
+}
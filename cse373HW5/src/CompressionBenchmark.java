@@ -0,0 +1,89 @@
+import java.util.*;
+
+/**
+ * Benchmark comparing the compressed and uncompressed adjacency layouts of
+ * CompressedGraph on a large random sparse graph. Reports the size of the
+ * adjacency arrays and the average query time of each layout, and checks that
+ * both layouts agree on every path cost.
+ *
+ * USAGE: java CompressionBenchmark [vertices] [edges_per_vertex] [queries] [seed]
+ *
+ * Most generated edges stay close to their source's id, which is what real
+ * networks look like after the vertex file is grouped by region; the rest go
+ * anywhere in the graph. A pair of vertices always gets the same weight, so
+ * repeated edges never conflict.
+ */
+
+public class CompressionBenchmark {
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		int degree = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		int queries = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+		long seed = args.length > 3 ? Long.parseLong(args[3]) : 373L;
+
+		// Build the random graph
+		Random random = new Random(seed);
+		List<Vertex> v = new ArrayList<Vertex>(n);
+		for (int i = 0; i < n; i++) {
+			v.add(new Vertex("v" + i));
+		}
+		List<Edge> e = new ArrayList<Edge>(n * degree);
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < degree; j++) {
+				int to;
+				if (random.nextInt(10) < 8) {
+					to = Math.min(n - 1, Math.max(0, i + random.nextInt(201) - 100));
+				} else {
+					to = random.nextInt(n);
+				}
+				e.add(new Edge(v.get(i), v.get(to), 1 + (int) (((long) i * 31 + to) % 500)));
+			}
+		}
+		System.out.println("Graph: " + n + " vertices, " + e.size() + " edges");
+
+		CompressedGraph plain = new CompressedGraph(v, e, false);
+		CompressedGraph packed = new CompressedGraph(v, e, true);
+		e = null;
+
+		// Pick the query pairs up front so both layouts answer the same ones
+		Vertex[] from = new Vertex[queries];
+		Vertex[] to = new Vertex[queries];
+		for (int i = 0; i < queries; i++) {
+			from[i] = v.get(random.nextInt(n));
+			to[i] = v.get(random.nextInt(n));
+		}
+
+		// Warm up both layouts before timing
+		for (int i = 0; i < Math.min(queries, 50); i++) {
+			plain.shortestPath(from[i], to[i]);
+			packed.shortestPath(from[i], to[i]);
+		}
+
+		long plainTime = 0;
+		long packedTime = 0;
+		for (int i = 0; i < queries; i++) {
+			long begin = System.nanoTime();
+			Path p1 = plain.shortestPath(from[i], to[i]);
+			long middle = System.nanoTime();
+			Path p2 = packed.shortestPath(from[i], to[i]);
+			long end = System.nanoTime();
+			plainTime += middle - begin;
+			packedTime += end - middle;
+
+			// Both layouts must find paths of the same cost
+			int c1 = p1 == null ? -1 : p1.cost;
+			int c2 = p2 == null ? -1 : p2.cost;
+			if (c1 != c2) {
+				System.err.println("COST MISMATCH from " + from[i] + " to " + to[i] + ": " + c1 + " vs " + c2);
+				System.exit(1);
+			}
+		}
+
+		long plainBytes = plain.adjacencyBytes();
+		long packedBytes = packed.adjacencyBytes();
+		System.out.printf("uncompressed: %,d bytes, %.3f ms/query%n", plainBytes, plainTime / 1e6 / queries);
+		System.out.printf("compressed:   %,d bytes, %.3f ms/query%n", packedBytes, packedTime / 1e6 / queries);
+		System.out.printf("size ratio %.2fx smaller, query slowdown %.2fx%n",
+				(double) plainBytes / packedBytes, (double) packedTime / plainTime);
+	}
+}
@@ -0,0 +1,85 @@
+import java.util.*;
+
+/**
+ * Benchmark comparing serial and parallel construction of a MyGraph from a
+ * large random edge collection. Builds the graph on one thread and then on
+ * the given number of threads, checks that both graphs come out the same,
+ * and reports the speedup.
+ *
+ * USAGE: java -Xmx8g ConstructionBenchmark [edges] [vertices] [threads] [rounds]
+ *
+ * The defaults (10M edges over 1M vertices) need several gigabytes of heap.
+ */
+
+public class ConstructionBenchmark {
+	public static void main(String[] args) {
+		int m = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+		int n = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+		// Build the random input. Each (source, destination) pair always gets
+		// the same weight so the graph never has conflicting edges.
+		Random random = new Random(373);
+		List<Vertex> v = new ArrayList<Vertex>(n);
+		for (int i = 0; i < n; i++) {
+			v.add(new Vertex("v" + i));
+		}
+		List<Edge> e = new ArrayList<Edge>(m);
+		for (int i = 0; i < m; i++) {
+			int from = random.nextInt(n);
+			int to = random.nextInt(n);
+			e.add(new Edge(v.get(from), v.get(to), 1 + (from * 31 + to) % 1000));
+		}
+		System.out.println("Input: " + n + " vertices, " + m + " edges, " + threads + " threads");
+
+		long serialBest = Long.MAX_VALUE;
+		long parallelBest = Long.MAX_VALUE;
+		long serialPrint = 0;
+		long parallelPrint = 0;
+		for (int round = 0; round < rounds; round++) {
+			// Only one graph is kept alive at a time to bound the heap
+			long begin = System.nanoTime();
+			MyGraph g = new MyGraph(v, e, 1);
+			serialBest = Math.min(serialBest, System.nanoTime() - begin);
+			serialPrint = fingerprint(g, v);
+			g = null;
+
+			begin = System.nanoTime();
+			g = new MyGraph(v, e, threads);
+			parallelBest = Math.min(parallelBest, System.nanoTime() - begin);
+			parallelPrint = fingerprint(g, v);
+			g = null;
+
+			if (serialPrint != parallelPrint) {
+				System.err.println("GRAPHS DIFFER in round " + round);
+				System.exit(1);
+			}
+		}
+
+		System.out.printf("serial:   %.1f ms%n", serialBest / 1e6);
+		System.out.printf("parallel: %.1f ms%n", parallelBest / 1e6);
+		System.out.printf("speedup %.2fx, graphs identical (fingerprint %x)%n",
+				(double) serialBest / parallelBest, serialPrint);
+	}
+
+	/**
+	 * Hashes the order and contents of the graph's edges and of every
+	 * vertex's adjacent and incoming vertices
+	 */
+	private static long fingerprint(MyGraph g, List<Vertex> v) {
+		long hash = 17;
+		for (Edge curEdge : g.edges()) {
+			hash = hash * 31 + curEdge.hashCode();
+		}
+		for (Vertex curVertex : v) {
+			for (Vertex adjVertex : g.adjacentVertices(curVertex)) {
+				hash = hash * 31 + adjVertex.hashCode();
+			}
+			for (Vertex inVertex : g.incomingVertices(curVertex)) {
+				hash = hash * 37 + inVertex.hashCode();
+			}
+		}
+		return hash;
+	}
+}
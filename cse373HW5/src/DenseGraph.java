@@ -0,0 +1,566 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A representation of a dense graph, backed by an n by n matrix of edge
+ * weights. Assumes that we do not have negative cost edges in the graph.
+ *
+ * Shortest paths come from all-pairs cost and next-hop tables built once by
+ * a blocked Floyd-Warshall: the matrices are split into square tiles that fit
+ * in cache, and for each diagonal tile the tiles in its row and column, then
+ * all the others, are updated in parallel. After that, shortestPath is a walk
+ * through the next-hop table. The tables take allPairsBytes(n) bytes;
+ * footprintBytes() reports the whole footprint without building anything, so
+ * callers can check it before calling precompute. Once built, the tables never
+ * change, and queries read them without locking.
+ */
+public class DenseGraph implements Graph {
+	// Side of the square tiles the matrices are processed in
+	private static final int TILE = 64;
+
+	// Weight or distance meaning there is no edge or path
+	private static final int NONE = Integer.MAX_VALUE;
+
+	// Vertices by index, and the index of each vertex
+	private Vertex[] vertexArray;
+	private Map<Vertex, Integer> vertexIndex;
+	private int n;
+
+	// Weight of the edge from i to j at weights[i * n + j], or NONE
+	private int[] weights;
+
+	// All-pairs tables, null until precompute publishes them
+	private volatile Tables tables;
+
+	/**
+	 * Creates a DenseGraph object with the given collection of vertices and
+	 * the given collection of edges.
+	 *
+	 * @param v
+	 *            a collection of the vertices in this graph
+	 * @param e
+	 *            a collection of the edges in this graph
+	 * @throws IllegalArgumentException
+	 *             if an edge has a negative weight, an endpoint that is not in
+	 *             the vertex collection, or a different weight than another
+	 *             edge between the same vertices, or if there are too many
+	 *             vertices for a matrix
+	 */
+	public DenseGraph(Collection<Vertex> v, Collection<Edge> e) {
+		// Number the vertices in the order given, ignoring repeats
+		vertexIndex = new HashMap<Vertex, Integer>();
+		List<Vertex> vertexList = new ArrayList<Vertex>();
+		for (Vertex curVertex : v) {
+			if (!vertexIndex.containsKey(curVertex)) {
+				vertexIndex.put(curVertex, vertexList.size());
+				vertexList.add(new Vertex(curVertex.getLabel()));
+			}
+		}
+		vertexArray = vertexList.toArray(new Vertex[vertexList.size()]);
+		n = vertexArray.length;
+		if ((long) n * n > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("too many vertices for a dense graph: " + n);
+		}
+
+		// Fill in the weight matrix, checking each edge
+		weights = new int[n * n];
+		Arrays.fill(weights, NONE);
+		for (Edge curEdge : e) {
+			Integer from = vertexIndex.get(curEdge.getSource());
+			Integer to = vertexIndex.get(curEdge.getDestination());
+			if (curEdge.getWeight() < 0) {
+				throw new IllegalArgumentException("negative weight: " + curEdge);
+			} else if (from == null || to == null) {
+				throw new IllegalArgumentException("unknown vertex: " + curEdge);
+			}
+			int cell = from * n + to;
+			if (weights[cell] != NONE && weights[cell] != curEdge.getWeight()) {
+				throw new IllegalArgumentException("conflicting weights: " + curEdge);
+			}
+			weights[cell] = curEdge.getWeight();
+		}
+	}
+
+	/**
+	 * Get the memory the all-pairs tables of a graph with the given number
+	 * of vertices take, on top of its weight matrix
+	 *
+	 * @param vertexCount
+	 *            the number of vertices
+	 * @return the size of the cost and next-hop tables in bytes
+	 */
+	public static long allPairsBytes(int vertexCount) {
+		return 8L * vertexCount * vertexCount;
+	}
+
+	/**
+	 * Get the memory this graph's weight matrix and all-pairs tables take
+	 * once the tables are built. Builds nothing, so it can be checked before
+	 * calling precompute.
+	 *
+	 * @return the size of the three matrices in bytes
+	 */
+	public long footprintBytes() {
+		return 4L * n * n + allPairsBytes(n);
+	}
+
+	/**
+	 * Test whether the all-pairs tables have been built
+	 *
+	 * @return true if precompute has run
+	 */
+	public boolean isPrecomputed() {
+		return tables != null;
+	}
+
+	/**
+	 * Builds the all-pairs cost and next-hop tables, if they are not built
+	 * yet, using the blocked Floyd-Warshall algorithm on the given number of
+	 * threads
+	 *
+	 * @param threads
+	 *            the most threads to use, 1 to build serially
+	 * @throws IllegalStateException
+	 *             if the tables could never fit in the heap; the message
+	 *             gives footprintBytes()
+	 */
+	public void precompute(int threads) {
+		// Only the first build takes the lock
+		if (tables == null) {
+			synchronized (this) {
+				if (tables == null) {
+					tables = build(threads);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs the blocked Floyd-Warshall algorithm
+	 *
+	 * @param threads
+	 *            the most threads to use, 1 to build serially
+	 * @return the finished tables
+	 */
+	private Tables build(int threads) {
+		// Fail fast rather than run out of memory halfway through
+		long needed = allPairsBytes(n);
+		if (needed > Runtime.getRuntime().maxMemory()) {
+			throw new IllegalStateException("graph needs " + footprintBytes() + " bytes with its all-pairs tables ("
+					+ needed + " for the tables), heap limit is " + Runtime.getRuntime().maxMemory());
+		}
+
+		// Start from the direct edges
+		final int[] cost = weights.clone();
+		final int[] next = new int[n * n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				next[i * n + j] = (cost[i * n + j] == NONE) ? -1 : j;
+			}
+			cost[i * n + i] = 0;
+			next[i * n + i] = i;
+		}
+
+		final int blocks = (n + TILE - 1) / TILE;
+		ExecutorService pool = (threads > 1 && blocks > 1) ? Executors.newFixedThreadPool(threads) : null;
+		try {
+			for (int kb = 0; kb < blocks; kb++) {
+				final int k = kb;
+
+				// The diagonal tile only depends on itself
+				relaxTile(cost, next, k, k, k);
+
+				// The rest of its row and column depend on it
+				List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+				for (int b = 0; b < blocks; b++) {
+					if (b == k) {
+						continue;
+					}
+					final int other = b;
+					tasks.add(new Callable<Void>() {
+						public Void call() {
+							relaxTile(cost, next, k, other, k);
+							relaxTile(cost, next, other, k, k);
+							return null;
+						}
+					});
+				}
+				runAll(pool, tasks);
+
+				// Every other tile depends on its row and column tiles
+				tasks.clear();
+				for (int ib = 0; ib < blocks; ib++) {
+					if (ib == k) {
+						continue;
+					}
+					final int row = ib;
+					tasks.add(new Callable<Void>() {
+						public Void call() {
+							for (int jb = 0; jb < blocks; jb++) {
+								if (jb != k) {
+									relaxTile(cost, next, row, jb, k);
+								}
+							}
+							return null;
+						}
+					});
+				}
+				runAll(pool, tasks);
+			}
+
+			// The costs are right, but a tile updated through one vertex of a
+			// block already sees paths through the later ones, so when paths
+			// tie through zero weight edges the next hops can go round in a
+			// circle. Rebuild the ones towards any vertex where they do.
+			if (hasZeroWeight()) {
+				// List the edges into each vertex, so the rebuild only looks
+				// at edges that exist
+				final int[] inStart = new int[n + 1];
+				for (int i = 0; i < n; i++) {
+					for (int j = 0; j < n; j++) {
+						if (weights[i * n + j] != NONE) {
+							inStart[j + 1]++;
+						}
+					}
+				}
+				for (int j = 0; j < n; j++) {
+					inStart[j + 1] += inStart[j];
+				}
+				final int[] inSources = new int[inStart[n]];
+				final int[] inWeights = new int[inStart[n]];
+				int[] fill = Arrays.copyOf(inStart, n);
+				for (int i = 0; i < n; i++) {
+					for (int j = 0; j < n; j++) {
+						if (weights[i * n + j] != NONE) {
+							inSources[fill[j]] = i;
+							inWeights[fill[j]++] = weights[i * n + j];
+						}
+					}
+				}
+				List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+				for (int start = 0; start < n; start += TILE) {
+					final int first = start;
+					final int last = Math.min(n, start + TILE);
+					tasks.add(new Callable<Void>() {
+						public Void call() {
+							int[] distance = new int[n];
+							int[] queue = new int[n];
+							boolean[] seen = new boolean[n];
+							int[] mark = new int[n];
+							for (int to = first; to < last; to++) {
+								if (nextHopsLoop(next, to, mark)) {
+									rebuildNextHops(cost, next, inStart, inSources, inWeights, to, distance, queue,
+											seen);
+								}
+							}
+							return null;
+						}
+					});
+				}
+				runAll(pool, tasks);
+			}
+		} finally {
+			if (pool != null) {
+				pool.shutdown();
+			}
+		}
+		return new Tables(cost, next);
+	}
+
+	/**
+	 * Shortens the paths in one tile by going through each vertex of the
+	 * k-th block of vertices in turn
+	 *
+	 * @param ib
+	 *            the tile's block of start vertices
+	 * @param jb
+	 *            the tile's block of end vertices
+	 * @param kb
+	 *            the block of vertices to go through
+	 */
+	private void relaxTile(int[] cost, int[] next, int ib, int jb, int kb) {
+		int iEnd = Math.min(n, (ib + 1) * TILE);
+		int jEnd = Math.min(n, (jb + 1) * TILE);
+		int kEnd = Math.min(n, (kb + 1) * TILE);
+		for (int k = kb * TILE; k < kEnd; k++) {
+			for (int i = ib * TILE; i < iEnd; i++) {
+				int throughK = cost[i * n + k];
+				if (throughK == NONE) {
+					continue;
+				}
+				int row = i * n;
+				int kRow = k * n;
+				for (int j = jb * TILE; j < jEnd; j++) {
+					int fromK = cost[kRow + j];
+					if (fromK != NONE) {
+						int total = throughK + fromK;
+						if (total >= 0 && total < cost[row + j]) {
+							cost[row + j] = total;
+							next[row + j] = next[row + k];
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks whether any edge weighs nothing
+	 */
+	private boolean hasZeroWeight() {
+		for (int weight : weights) {
+			if (weight == 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks whether following the next hops towards one vertex from
+	 * anywhere goes round in a circle
+	 *
+	 * @param to
+	 *            the vertex the paths lead to
+	 * @param mark
+	 *            space for n marks, only ever set higher for a higher to
+	 */
+	private boolean nextHopsLoop(int[] next, int to, int[] mark) {
+		int walking = 2 * to + 1;
+		int done = 2 * to + 2;
+		for (int start = 0; start < n; start++) {
+			// Walk until reaching to or a vertex already known to lead there
+			int v = start;
+			while (v != to && next[v * n + to] != -1 && mark[v] != done) {
+				if (mark[v] == walking) {
+					return true;
+				}
+				mark[v] = walking;
+				v = next[v * n + to];
+			}
+			for (v = start; v != to && next[v * n + to] != -1 && mark[v] != done; v = next[v * n + to]) {
+				mark[v] = done;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Points the next hops towards one vertex along a tree of shortest paths,
+	 * found by going backwards from it over the edges that keep to the
+	 * finished costs. Each vertex points to one found before it, so following
+	 * them always ends at the vertex.
+	 *
+	 * @param inStart
+	 *            where the edges into each vertex start in inSources and
+	 *            inWeights
+	 * @param to
+	 *            the vertex the paths lead to
+	 * @param distance
+	 *            space for the cost of each vertex to to
+	 * @param queue
+	 *            space for n vertices
+	 * @param seen
+	 *            space for n flags, left all false
+	 */
+	private void rebuildNextHops(int[] cost, int[] next, int[] inStart, int[] inSources, int[] inWeights, int to,
+			int[] distance, int[] queue, boolean[] seen) {
+		for (int i = 0; i < n; i++) {
+			distance[i] = cost[i * n + to];
+		}
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = to;
+		seen[to] = true;
+		while (head < tail) {
+			int x = queue[head++];
+			int toX = distance[x];
+			for (int edge = inStart[x]; edge < inStart[x + 1]; edge++) {
+				int i = inSources[edge];
+				if (!seen[i] && distance[i] != NONE && (long) inWeights[edge] + toX == distance[i]) {
+					next[i * n + to] = x;
+					seen[i] = true;
+					queue[tail++] = i;
+				}
+			}
+		}
+		for (int k = 0; k < tail; k++) {
+			seen[queue[k]] = false;
+		}
+	}
+
+	/**
+	 * Runs the tasks on the pool, or on this thread if there is no pool,
+	 * and waits for all of them
+	 */
+	private static void runAll(ExecutorService pool, List<Callable<Void>> tasks) {
+		try {
+			if (pool == null) {
+				for (Callable<Void> task : tasks) {
+					task.call();
+				}
+				return;
+			}
+			for (Future<Void> result : pool.invokeAll(tasks)) {
+				result.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Return the collection of vertices of this graph
+	 *
+	 * @return the vertices as a collection (which is anything iterable)
+	 */
+	public Collection<Vertex> vertices() {
+		// Create and return a copy of the vertices to preserve the local copy
+		Collection<Vertex> verticesCopy = new ArrayList<Vertex>();
+		for (Vertex curVertex : vertexArray) {
+			verticesCopy.add(new Vertex(curVertex.getLabel()));
+		}
+		return verticesCopy;
+	}
+
+	/**
+	 * Return the collection of edges of this graph, ordered by source and
+	 * then by destination
+	 *
+	 * @return the edges as a collection (which is anything iterable)
+	 */
+	public Collection<Edge> edges() {
+		Collection<Edge> edgesCopy = new ArrayList<Edge>();
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				if (weights[i * n + j] != NONE) {
+					edgesCopy.add(new Edge(vertexArray[i], vertexArray[j], weights[i * n + j]));
+				}
+			}
+		}
+		return edgesCopy;
+	}
+
+	/**
+	 * Return a collection of vertices adjacent to a given vertex v. i.e., the
+	 * set of all vertices w where edges v -> w exist in the graph. Return an
+	 * empty collection if there are no adjacent vertices.
+	 *
+	 * @param v
+	 *            one of the vertices in the graph
+	 * @return an iterable collection of vertices adjacent to v in the graph
+	 * @throws IllegalArgumentException
+	 *             if v does not exist.
+	 */
+	public Collection<Vertex> adjacentVertices(Vertex v) {
+		int from = indexOf(v);
+		Collection<Vertex> adjacent = new ArrayList<Vertex>();
+		for (int j = 0; j < n; j++) {
+			if (weights[from * n + j] != NONE) {
+				adjacent.add(vertexArray[j]);
+			}
+		}
+		return adjacent;
+	}
+
+	/**
+	 * Test whether vertex b is adjacent to vertex a (i.e. a -> b) in a directed
+	 * graph. Assumes that we do not have negative cost edges in the graph.
+	 *
+	 * @param a
+	 *            one vertex
+	 * @param b
+	 *            another vertex
+	 * @return cost of edge if there is a directed edge from a to b in the
+	 *         graph, return -1 otherwise.
+	 * @throws IllegalArgumentException
+	 *             if a or b do not exist.
+	 */
+	public int edgeCost(Vertex a, Vertex b) {
+		int weight = weights[indexOf(a) * n + indexOf(b)];
+		return (weight == NONE) ? -1 : weight;
+	}
+
+	/**
+	 * Returns the shortest path from a to b in the graph, or null if there is
+	 * no such path, by walking the next-hop table. Builds the all-pairs
+	 * tables on every available processor first if they are not built yet.
+	 *
+	 * @param a
+	 *            the starting vertex
+	 * @param b
+	 *            the destination vertex
+	 * @return a Path in the same form as MyGraph.shortestPath: the vertices
+	 *         from b back to, but not including, a, and the cost of the path.
+	 *         Returns null if b is not reachable from a.
+	 * @throws IllegalArgumentException
+	 *             if a or b does not exist.
+	 */
+	public Path shortestPath(Vertex a, Vertex b) {
+		int from = indexOf(a);
+		int to = indexOf(b);
+		Tables built = tables;
+		if (built == null) {
+			precompute(Runtime.getRuntime().availableProcessors());
+			built = tables;
+		}
+		int[] nextHops = built.nextHops;
+
+		// Check simplest case when begin point and end point are the same
+		List<Vertex> shortList = new ArrayList<Vertex>();
+		if (from == to) {
+			shortList.add(vertexArray[from]);
+			return new Path(shortList, 0);
+		}
+
+		// Return a null path if b cannot be reached
+		if (nextHops[from * n + to] == -1) {
+			return null;
+		}
+
+		// Follow the next hops to b, then reverse them so the list runs from
+		// b back to a like MyGraph.shortestPath
+		for (int temp = from; temp != to; temp = nextHops[temp * n + to]) {
+			shortList.add(vertexArray[nextHops[temp * n + to]]);
+		}
+		Collections.reverse(shortList);
+		return new Path(shortList, built.costs[from * n + to]);
+	}
+
+	/**
+	 * Finds the index of a vertex
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the vertex does not exist.
+	 */
+	private int indexOf(Vertex v) {
+		Integer index = vertexIndex.get(v);
+		if (index == null) {
+			throw new IllegalArgumentException();
+		}
+		return index;
+	}
+
+	/**
+	 * The all-pairs tables, which never change once built
+	 */
+	private static class Tables {
+		// The cost of the shortest path from i to j at costs[i * n + j], and
+		// the vertex after i on that path at nextHops[i * n + j] (-1 if none)
+		final int[] costs;
+		final int[] nextHops;
+
+		Tables(int[] costs, int[] nextHops) {
+			this.costs = costs;
+			this.nextHops = nextHops;
+		}
+	}
+}
@@ -0,0 +1,116 @@
+/**
+ * A binary min-heap of vertex ids ordered by distance, used by the
+ * array-based shortest path searches. Each entry packs a nonnegative distance
+ * and a vertex id into one long so the heap never allocates per entry.
+ * Entries are never decreased in place; a vertex is pushed again whenever its
+ * distance improves and stale entries are skipped by the caller.
+ */
+class DistanceHeap {
+	// Packed (distance, id) entries, heap ordered
+	private long[] heap;
+
+	// Number of entries currently in the heap
+	private int size;
+
+	/**
+	 * Construct a new, empty heap
+	 *
+	 * @param capacity
+	 *            the number of entries to make room for up front
+	 */
+	public DistanceHeap(int capacity) {
+		heap = new long[Math.max(capacity, 16)];
+		size = 0;
+	}
+
+	/**
+	 * Add a vertex id with the given distance
+	 *
+	 * @param id
+	 *            the vertex id
+	 * @param distance
+	 *            the nonnegative distance to order the vertex by
+	 */
+	public void add(int id, int distance) {
+		// Grow the array when full
+		if (size == heap.length) {
+			long[] bigger = new long[heap.length * 2];
+			System.arraycopy(heap, 0, bigger, 0, size);
+			heap = bigger;
+		}
+
+		// Percolate the new entry up to its place
+		long key = ((long) distance << 32) | (id & 0xFFFFFFFFL);
+		int hole = size++;
+		while (hole > 0 && heap[(hole - 1) / 2] > key) {
+			heap[hole] = heap[(hole - 1) / 2];
+			hole = (hole - 1) / 2;
+		}
+		heap[hole] = key;
+	}
+
+	/**
+	 * Remove the entry with the smallest distance
+	 *
+	 * @return the packed entry, read with idOf and distanceOf
+	 * @throws IllegalStateException
+	 *             if the heap is empty
+	 */
+	public long removeMin() {
+		if (size == 0) {
+			throw new IllegalStateException("empty");
+		}
+		long min = heap[0];
+		long last = heap[--size];
+
+		// Percolate the last entry down from the root
+		int hole = 0;
+		while (2 * hole + 1 < size) {
+			int child = 2 * hole + 1;
+			if (child + 1 < size && heap[child + 1] < heap[child]) {
+				child++;
+			}
+			if (heap[child] >= last) {
+				break;
+			}
+			heap[hole] = heap[child];
+			hole = child;
+		}
+		heap[hole] = last;
+		return min;
+	}
+
+	/**
+	 * Test whether the heap has no entries
+	 *
+	 * @return true if the heap is empty
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Remove every entry, keeping the allocated space for reuse
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Get the vertex id of a packed entry
+	 *
+	 * @return the vertex id
+	 */
+	public static int idOf(long entry) {
+		return (int) entry;
+	}
+
+	/**
+	 * Get the distance of a packed entry
+	 *
+	 * @return the distance the entry was added with
+	 */
+	public static int distanceOf(long entry) {
+		return (int) (entry >>> 32);
+	}
+}
@@ -0,0 +1,409 @@
+import java.util.*;
+
+/**
+ * Keeps shortest path trees from a set of frequently used origins up to date
+ * while edges of the graph are inserted, deleted or change weight. Assumes
+ * that we do not have negative cost edges in the graph.
+ *
+ * After a batch of changes each tree is repaired in the style of Ramalingam
+ * and Reps instead of being recomputed: a tree none of the changes affect is
+ * kept as it is. Otherwise only the vertices below a tree edge that got worse
+ * are cleared and re-attached, and only vertices that a cheaper edge improves
+ * are updated, spreading out from there with Dijkstra's algorithm.
+ */
+public class DynamicShortestPaths {
+	// Distance meaning a vertex cannot be reached
+	private static final int NONE = Integer.MAX_VALUE;
+
+	// Vertices by index, and the index of each vertex
+	private Vertex[] vertexArray;
+	private Map<Vertex, Integer> vertexIndex;
+
+	// Current weight of every edge, by source and by destination
+	private List<Map<Integer, Integer>> out;
+	private List<Map<Integer, Integer>> in;
+
+	// Shortest path tree from each origin
+	private Map<Integer, Tree> trees = new HashMap<Integer, Tree>();
+
+	// Frontier for building and repairing trees
+	private DistanceHeap heap = new DistanceHeap(64);
+
+	/**
+	 * Creates a DynamicShortestPaths object starting from the vertices and
+	 * edges of the given graph. Later changes to that graph are not seen.
+	 *
+	 * @param g
+	 *            the graph to start from
+	 */
+	public DynamicShortestPaths(Graph g) {
+		// Number the vertices
+		vertexIndex = new HashMap<Vertex, Integer>();
+		List<Vertex> vertexList = new ArrayList<Vertex>();
+		for (Vertex curVertex : g.vertices()) {
+			if (!vertexIndex.containsKey(curVertex)) {
+				vertexIndex.put(curVertex, vertexList.size());
+				vertexList.add(new Vertex(curVertex.getLabel()));
+			}
+		}
+		vertexArray = vertexList.toArray(new Vertex[vertexList.size()]);
+
+		// Copy the edges into maps that can change
+		out = new ArrayList<Map<Integer, Integer>>();
+		in = new ArrayList<Map<Integer, Integer>>();
+		for (int i = 0; i < vertexArray.length; i++) {
+			out.add(new HashMap<Integer, Integer>());
+			in.add(new HashMap<Integer, Integer>());
+		}
+		for (Edge curEdge : g.edges()) {
+			int from = indexOf(curEdge.getSource());
+			int to = indexOf(curEdge.getDestination());
+			out.get(from).put(to, curEdge.getWeight());
+			in.get(to).put(from, curEdge.getWeight());
+		}
+	}
+
+	/**
+	 * Start keeping the shortest path tree from an origin up to date
+	 *
+	 * @param a
+	 *            the origin
+	 * @throws IllegalArgumentException
+	 *             if a does not exist.
+	 */
+	public void addOrigin(Vertex a) {
+		int origin = indexOf(a);
+		if (trees.containsKey(origin)) {
+			return;
+		}
+
+		// Run dijkstra's algorithm over the whole graph from the origin
+		Tree tree = new Tree(vertexArray.length);
+		tree.distance[origin] = 0;
+		heap.clear();
+		heap.add(origin, 0);
+		spread(tree);
+		trees.put(origin, tree);
+	}
+
+	/**
+	 * Stop keeping the shortest path tree from an origin
+	 *
+	 * @param a
+	 *            the origin
+	 */
+	public void removeOrigin(Vertex a) {
+		Integer origin = vertexIndex.get(a);
+		if (origin != null) {
+			trees.remove(origin);
+		}
+	}
+
+	/**
+	 * Returns the shortest path from a to b with the current edges, adding a
+	 * as an origin first if it is not one.
+	 *
+	 * @param a
+	 *            the starting vertex
+	 * @param b
+	 *            the destination vertex
+	 * @return a Path in the same form as MyGraph.shortestPath: the vertices
+	 *         from b back to, but not including, a, and the cost of the path.
+	 *         Returns null if b is not reachable from a.
+	 * @throws IllegalArgumentException
+	 *             if a or b does not exist.
+	 */
+	public Path shortestPath(Vertex a, Vertex b) {
+		int from = indexOf(a);
+		int to = indexOf(b);
+		addOrigin(a);
+		Tree tree = trees.get(from);
+
+		// Check simplest case when begin point and end point are the same
+		List<Vertex> shortList = new ArrayList<Vertex>();
+		if (from == to) {
+			shortList.add(vertexArray[from]);
+			return new Path(shortList, 0);
+		}
+
+		// Return a null path if b cannot be reached
+		if (tree.distance[to] == NONE) {
+			return null;
+		}
+
+		// Walk up the tree from b until the origin is reached
+		for (int temp = to; temp != from; temp = tree.parent[temp]) {
+			shortList.add(vertexArray[temp]);
+		}
+		return new Path(shortList, tree.distance[to]);
+	}
+
+	/**
+	 * Applies a batch of edge changes and repairs every kept tree. Either all
+	 * of the changes are applied or, if one is invalid, none are.
+	 *
+	 * @param changes
+	 *            the changes, applied in order
+	 * @return the number of trees that had to be repaired; the rest were not
+	 *         affected by any change and were kept as they were
+	 * @throws IllegalArgumentException
+	 *             if a change names a vertex that does not exist, inserts an
+	 *             edge that exists, or deletes or reweighs one that does not
+	 */
+	public int applyChanges(Collection<EdgeChange> changes) {
+		// Check the whole batch against the edges as they would be after
+		// each change, before changing anything. Several changes to one edge
+		// add up to a single change from its first weight to its last.
+		Map<Long, int[]> net = new LinkedHashMap<Long, int[]>();
+		for (EdgeChange change : changes) {
+			int from = indexOf(change.from);
+			int to = indexOf(change.to);
+			Long key = ((long) from << 32) | to;
+			int[] edge = net.get(key);
+			if (edge == null) {
+				Integer weight = out.get(from).get(to);
+				edge = new int[] { from, to, (weight == null) ? NONE : weight, (weight == null) ? NONE : weight };
+				net.put(key, edge);
+			}
+			if ((change.kind == EdgeChange.Kind.INSERT) != (edge[3] == NONE)) {
+				throw new IllegalArgumentException((edge[3] == NONE ? "no such edge: " : "edge exists: ") + change);
+			}
+			edge[3] = (change.kind == EdgeChange.Kind.DELETE) ? NONE : change.weight;
+		}
+
+		// Apply the changes to the edges
+		int count = net.size();
+		int[] from = new int[count];
+		int[] to = new int[count];
+		int[] oldWeight = new int[count];
+		int[] newWeight = new int[count];
+		int c = 0;
+		for (int[] edge : net.values()) {
+			from[c] = edge[0];
+			to[c] = edge[1];
+			oldWeight[c] = edge[2];
+			newWeight[c] = edge[3];
+			if (newWeight[c] == NONE) {
+				out.get(from[c]).remove(to[c]);
+				in.get(to[c]).remove(from[c]);
+			} else {
+				out.get(from[c]).put(to[c], newWeight[c]);
+				in.get(to[c]).put(from[c], newWeight[c]);
+			}
+			c++;
+		}
+
+		int repaired = 0;
+		for (Tree tree : trees.values()) {
+			if (repair(tree, from, to, oldWeight, newWeight)) {
+				repaired++;
+			}
+		}
+		return repaired;
+	}
+
+	/**
+	 * Repairs one tree after the edges have been changed
+	 *
+	 * @return true if any change affected the tree
+	 */
+	private boolean repair(Tree tree, int[] from, int[] to, int[] oldWeight, int[] newWeight) {
+		int[] distance = tree.distance;
+		int[] parent = tree.parent;
+
+		// Tree edges that got worse or went away cut off the subtree below
+		// them. The edges are already changed, so a tree edge is recognized
+		// by the parent link and the distance it used to explain. All of them
+		// are found before any is cut, since a deleted tree edge can no longer
+		// be followed down from a parent that gets cut first.
+		List<Integer> roots = new ArrayList<Integer>();
+		for (int c = 0; c < from.length; c++) {
+			boolean worse = oldWeight[c] != NONE && (newWeight[c] == NONE || newWeight[c] > oldWeight[c]);
+			if (worse && parent[to[c]] == from[c] && distance[from[c]] != NONE
+					&& distance[to[c]] == distance[from[c]] + oldWeight[c]) {
+				roots.add(to[c]);
+			}
+		}
+		List<Integer> affected = new ArrayList<Integer>();
+		for (int root : roots) {
+			clearSubtree(tree, root, affected);
+		}
+
+		// Re-attach each cleared vertex through its best neighbor outside the
+		// cleared part, if it has one
+		heap.clear();
+		for (int v : affected) {
+			for (Map.Entry<Integer, Integer> edge : in.get(v).entrySet()) {
+				int u = edge.getKey();
+				int cost = distance[u] + edge.getValue();
+				if (distance[u] != NONE && cost >= 0 && cost < distance[v]) {
+					distance[v] = cost;
+					parent[v] = u;
+				}
+			}
+			if (distance[v] != NONE) {
+				heap.add(v, distance[v]);
+			}
+		}
+
+		// Edges that got cheaper or were added can only help where they beat
+		// the distance their destination already has
+		boolean changed = !affected.isEmpty();
+		for (int c = 0; c < from.length; c++) {
+			boolean better = newWeight[c] != NONE && (oldWeight[c] == NONE || newWeight[c] < oldWeight[c]);
+			int cost = distance[from[c]] + newWeight[c];
+			if (better && distance[from[c]] != NONE && cost >= 0 && cost < distance[to[c]]) {
+				distance[to[c]] = cost;
+				parent[to[c]] = from[c];
+				heap.add(to[c], distance[to[c]]);
+				changed = true;
+			}
+		}
+
+		// Spread the new distances to whatever they improve
+		spread(tree);
+		return changed;
+	}
+
+	/**
+	 * Clears the distances of a vertex and everything below it in the tree
+	 *
+	 * @param root
+	 *            the top of the subtree
+	 * @param cleared
+	 *            where to add each vertex cleared
+	 */
+	private void clearSubtree(Tree tree, int root, List<Integer> cleared) {
+		if (tree.distance[root] == NONE) {
+			return;
+		}
+		Deque<Integer> stack = new ArrayDeque<Integer>();
+		stack.push(root);
+		tree.distance[root] = NONE;
+		while (!stack.isEmpty()) {
+			int v = stack.pop();
+			cleared.add(v);
+
+			// A vertex's children are the out-neighbors whose parent it is
+			for (int w : out.get(v).keySet()) {
+				if (tree.parent[w] == v && tree.distance[w] != NONE) {
+					tree.distance[w] = NONE;
+					stack.push(w);
+				}
+			}
+			tree.parent[v] = -1;
+		}
+	}
+
+	/**
+	 * Runs dijkstra's algorithm from the vertices in the heap, lowering
+	 * distances in the tree wherever a cheaper path is found
+	 */
+	private void spread(Tree tree) {
+		int[] distance = tree.distance;
+		int[] parent = tree.parent;
+		while (!heap.isEmpty()) {
+			long entry = heap.removeMin();
+			int v = DistanceHeap.idOf(entry);
+
+			// Skip entries left behind when a cheaper path was found
+			if (DistanceHeap.distanceOf(entry) != distance[v]) {
+				continue;
+			}
+			for (Map.Entry<Integer, Integer> edge : out.get(v).entrySet()) {
+				int w = edge.getKey();
+				int cost = distance[v] + edge.getValue();
+				if (cost >= 0 && cost < distance[w]) {
+					distance[w] = cost;
+					parent[w] = v;
+					heap.add(w, cost);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the index of a vertex
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the vertex does not exist.
+	 */
+	private int indexOf(Vertex v) {
+		Integer index = vertexIndex.get(v);
+		if (index == null) {
+			throw new IllegalArgumentException();
+		}
+		return index;
+	}
+
+	/**
+	 * A shortest path tree: each vertex's distance from the origin and the
+	 * vertex before it on its path
+	 */
+	private static class Tree {
+		final int[] distance;
+		final int[] parent;
+
+		Tree(int n) {
+			distance = new int[n];
+			parent = new int[n];
+			Arrays.fill(distance, NONE);
+			Arrays.fill(parent, -1);
+		}
+	}
+
+	/**
+	 * One change to the edges of the graph
+	 */
+	public static class EdgeChange {
+		enum Kind {
+			INSERT, DELETE, CHANGE_WEIGHT
+		}
+
+		private final Kind kind;
+		private final Vertex from;
+		private final Vertex to;
+		private final int weight;
+
+		private EdgeChange(Kind kind, Vertex from, Vertex to, int weight) {
+			if (from == null || to == null)
+				throw new IllegalArgumentException("null");
+			if (weight < 0)
+				throw new IllegalArgumentException("negative weight");
+			this.kind = kind;
+			this.from = from;
+			this.to = to;
+			this.weight = weight;
+		}
+
+		/**
+		 * Add an edge that does not exist yet
+		 */
+		public static EdgeChange insert(Vertex from, Vertex to, int weight) {
+			return new EdgeChange(Kind.INSERT, from, to, weight);
+		}
+
+		/**
+		 * Remove an existing edge
+		 */
+		public static EdgeChange delete(Vertex from, Vertex to) {
+			return new EdgeChange(Kind.DELETE, from, to, 0);
+		}
+
+		/**
+		 * Give an existing edge a new weight
+		 */
+		public static EdgeChange changeWeight(Vertex from, Vertex to, int weight) {
+			return new EdgeChange(Kind.CHANGE_WEIGHT, from, to, weight);
+		}
+
+		/**
+		 * A string representation of this object
+		 *
+		 * @return A string of the form KIND <from, to, weight>
+		 */
+		public String toString() {
+			return kind + " <" + from + ", " + to + (kind == Kind.DELETE ? "" : ", " + weight) + ">";
+		}
+	}
+}
@@ -0,0 +1,494 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.io.*;
+import java.lang.management.*;
+
+/**
+ * Load-test driver for the whole FindPaths pipeline: loads or generates a
+ * graph, then replays a workload of origin/destination queries against it
+ * and reports latency percentiles, throughput, garbage collection and the
+ * bytes allocated per query. The results can be saved as a baseline and
+ * later runs compared against it.
+ *
+ * USAGE: java LoadTest [options]
+ *   --vertices FILE --edges FILE   load the graph from FindPaths input files
+ *   --size N --degree D            or generate a random graph (default 2000, 4)
+ *   --trace FILE                   replay queries from FILE, one "ORIGIN DEST"
+ *                                  pair per line (default: random pairs)
+ *   --queries N                    number of queries to run (default 2000)
+ *   --warmup N                     untimed queries to run first (default 200)
+ *   --rate QPS                     open loop: start queries at this rate
+ *   --concurrency C                closed loop with C threads, or the number
+ *                                  of worker threads in open loop (default 1)
+ *   --save-baseline FILE           store this run's results in FILE
+ *   --baseline FILE                compare this run against FILE
+ *   --tolerance PCT                allowed slowdown before a regression is
+ *                                  reported (default 10)
+ *   --seed S                       random seed (default 373)
+ *   --cost-only true               ask for path costs only, which should
+ *                                  allocate nothing per query
+ *
+ * A baseline stores the settings of its run next to the results, and is only
+ * compared against a run with the same graph, workload and load settings;
+ * otherwise LoadTest exits with status 5. A regression exits with status 4.
+ * Allocation is compared in bytes per query rather than as a percentage, so
+ * a rise from a baseline of zero counts.
+ *
+ * In open loop each query's latency is measured from when it was scheduled
+ * to start, so queueing behind slow queries counts against it.
+ */
+
+public class LoadTest {
+	// Settings, filled in from the command line
+	private static String vertexFile = null;
+	private static String edgeFile = null;
+	private static String traceFile = null;
+	private static String baselineFile = null;
+	private static String saveBaselineFile = null;
+	private static int size = 2000;
+	private static int degree = 4;
+	private static int queries = 2000;
+	private static int warmup = 200;
+	private static double rate = 0;
+	private static int concurrency = 1;
+	private static double tolerance = 10;
+	private static long seed = 373;
+	private static boolean costOnly = false;
+
+	// Rise in allocated bytes per query tolerated before a regression is
+	// reported; allocation is often exactly zero, where a percentage is useless
+	private static final double ALLOC_SLACK_BYTES = 8;
+
+	// The graph under test and the queries to run against it
+	private static MyGraph graph;
+	private static Vertex[] origins;
+	private static Vertex[] destinations;
+
+	// Measurements for the timed queries
+	private static long[] latencies;
+	private static AtomicLong allocatedBytes = new AtomicLong();
+	private static AtomicInteger notFound = new AtomicInteger();
+
+	// Looked up once, since looking it up allocates
+	private static ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) throws Exception {
+		parseArgs(args);
+
+		// Load or generate the graph
+		long loadStart = System.nanoTime();
+		if (vertexFile != null) {
+			graph = FindPaths.readGraph(vertexFile, edgeFile);
+		} else {
+			graph = randomGraph(size, degree, new Random(seed));
+		}
+		long loadTime = System.nanoTime() - loadStart;
+		List<Vertex> vertexList = new ArrayList<Vertex>(graph.vertices());
+		System.out.printf("Loaded %d vertices, %d edges in %.1f ms%n",
+				vertexList.size(), graph.edges().size(), loadTime / 1e6);
+
+		// Read or generate the queries, and warm up every worker thread
+		readQueries(vertexList, new Random(seed + 1));
+		ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+		warmUp(pool);
+		allocatedBytes.set(0);
+		notFound.set(0);
+
+		// Run the timed queries
+		latencies = new long[queries];
+		long gcCount = 0;
+		long gcTime = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcCount -= gc.getCollectionCount();
+			gcTime -= gc.getCollectionTime();
+		}
+		long runStart = System.nanoTime();
+		if (rate > 0) {
+			runOpenLoop(pool);
+		} else {
+			runClosedLoop(pool);
+		}
+		pool.shutdown();
+		long runTime = System.nanoTime() - runStart;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcCount += gc.getCollectionCount();
+			gcTime += gc.getCollectionTime();
+		}
+
+		// Report the results
+		long[] sorted = latencies.clone();
+		Arrays.sort(sorted);
+		Properties results = new Properties();
+		results.setProperty("load.ms", format(loadTime / 1e6));
+		results.setProperty("p50.us", format(percentile(sorted, 50) / 1e3));
+		results.setProperty("p99.us", format(percentile(sorted, 99) / 1e3));
+		results.setProperty("p999.us", format(percentile(sorted, 99.9) / 1e3));
+		results.setProperty("max.us", format(sorted[sorted.length - 1] / 1e3));
+		results.setProperty("throughput.qps", format(queries / (runTime / 1e9)));
+		results.setProperty("gc.count", Long.toString(gcCount));
+		results.setProperty("gc.ms", Long.toString(gcTime));
+		results.setProperty("alloc.bytesPerQuery", allocatedBytes.get() < 0 ? "n/a" : format((double) allocatedBytes.get() / queries));
+
+		// Record what was run, so a baseline is only compared with the same
+		// setup
+		results.setProperty("setting.graph", (vertexFile != null) ? vertexFile + " " + edgeFile
+				: "random " + size + " " + degree);
+		results.setProperty("setting.trace", (traceFile != null) ? traceFile : "random");
+		results.setProperty("setting.seed", Long.toString(seed));
+		results.setProperty("setting.queries", Integer.toString(queries));
+		results.setProperty("setting.concurrency", Integer.toString(concurrency));
+		results.setProperty("setting.rate", Double.toString(rate));
+		results.setProperty("setting.costOnly", Boolean.toString(costOnly));
+		System.out.println("Ran " + queries + " queries (" + notFound.get() + " without a path), "
+				+ (rate > 0 ? "open loop at " + rate + " qps" : "closed loop") + ", "
+				+ concurrency + " thread(s)");
+		for (String key : new TreeSet<String>(results.stringPropertyNames())) {
+			System.out.println("  " + key + " = " + results.getProperty(key));
+		}
+
+		// Save and compare against baselines
+		if (saveBaselineFile != null) {
+			Writer out = new FileWriter(saveBaselineFile);
+			try {
+				results.store(out, "LoadTest baseline");
+			} finally {
+				out.close();
+			}
+			System.out.println("Saved baseline to " + saveBaselineFile);
+		}
+		if (baselineFile != null) {
+			Properties baseline = new Properties();
+			Reader in = new FileReader(baselineFile);
+			try {
+				baseline.load(in);
+			} finally {
+				in.close();
+			}
+			if (!sameSetup(baseline, results)) {
+				System.exit(5);
+			}
+			if (!compare(baseline, results)) {
+				System.exit(4);
+			}
+		}
+	}
+
+	/**
+	 * Runs the warmup queries spread over every thread of the pool, so that
+	 * each thread has its search workspace and compiled code before timing
+	 */
+	private static void warmUp(ExecutorService pool) throws Exception {
+		// The barrier holds each task until all of them are running, which
+		// puts every task on a different thread
+		final CyclicBarrier ready = new CyclicBarrier(concurrency);
+		List<Future<?>> results = new ArrayList<Future<?>>();
+		for (int t = 0; t < concurrency; t++) {
+			final int offset = t;
+			results.add(pool.submit(new Callable<Void>() {
+				public Void call() throws Exception {
+					ready.await();
+					for (int i = offset; i < warmup; i += concurrency) {
+						runQuery(i % origins.length);
+					}
+					return null;
+				}
+			}));
+		}
+		for (Future<?> result : results) {
+			result.get();
+		}
+	}
+
+	/**
+	 * Runs the timed queries with each worker thread starting its next query
+	 * as soon as its last one finishes
+	 */
+	private static void runClosedLoop(ExecutorService pool) throws Exception {
+		final AtomicInteger next = new AtomicInteger();
+		List<Future<?>> results = new ArrayList<Future<?>>();
+		for (int t = 0; t < concurrency; t++) {
+			results.add(pool.submit(new Runnable() {
+				public void run() {
+					for (int i = next.getAndIncrement(); i < queries; i = next.getAndIncrement()) {
+						long begin = System.nanoTime();
+						runQuery(i % origins.length);
+						latencies[i] = System.nanoTime() - begin;
+					}
+				}
+			}));
+		}
+		for (Future<?> result : results) {
+			result.get();
+		}
+	}
+
+	/**
+	 * Runs the timed queries on the pool, starting them at a fixed rate
+	 * whether or not earlier queries have finished
+	 */
+	private static void runOpenLoop(ExecutorService pool) throws InterruptedException {
+		long interval = (long) (1e9 / rate);
+		long start = System.nanoTime();
+		for (int q = 0; q < queries; q++) {
+			final int i = q;
+			final long scheduled = start + i * interval;
+
+			// Wait until this query is due
+			long wait = scheduled - System.nanoTime();
+			if (wait > 0) {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			}
+			pool.execute(new Runnable() {
+				public void run() {
+					runQuery(i % origins.length);
+					latencies[i] = System.nanoTime() - scheduled;
+				}
+			});
+		}
+		pool.shutdown();
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Runs one query, counting the bytes the calling thread allocates for it
+	 *
+	 * @param i
+	 *            the index of the query to run
+	 */
+	private static void runQuery(int i) {
+		long before = threadAllocatedBytes();
+
+		// Each thread searches in its own workspace, so queries run in parallel
+		boolean found;
+		if (costOnly) {
+			found = graph.shortestPathCost(origins[i], destinations[i]) >= 0;
+		} else {
+			found = graph.shortestPath(origins[i], destinations[i]) != null;
+		}
+
+		long after = threadAllocatedBytes();
+		if (before < 0 || after < 0) {
+			allocatedBytes.set(-1);
+		} else if (allocatedBytes.get() >= 0) {
+			allocatedBytes.addAndGet(after - before);
+		}
+		if (!found) {
+			notFound.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Get the bytes allocated so far by the calling thread
+	 *
+	 * @return the byte count, or -1 if the JVM cannot report it
+	 */
+	private static long threadAllocatedBytes() {
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks that a baseline was recorded with the same settings as this run,
+	 * printing every setting that differs
+	 *
+	 * @return true if the runs can be compared
+	 */
+	private static boolean sameSetup(Properties baseline, Properties results) {
+		boolean same = true;
+		for (String key : new TreeSet<String>(results.stringPropertyNames())) {
+			if (!key.startsWith("setting.")) {
+				continue;
+			}
+			String before = baseline.getProperty(key);
+			if (!results.getProperty(key).equals(before)) {
+				if (same) {
+					System.err.println("Baseline " + baselineFile + " was recorded with a different setup:");
+				}
+				System.err.println("  " + key + ": baseline " + (before == null ? "(not recorded)" : before)
+						+ ", this run " + results.getProperty(key));
+				same = false;
+			}
+		}
+		return same;
+	}
+
+	/**
+	 * Compares this run's results with a baseline and reports every metric
+	 * that got worse by more than the tolerance
+	 *
+	 * @return true if nothing regressed
+	 */
+	private static boolean compare(Properties baseline, Properties results) {
+		boolean passed = true;
+		System.out.println("Compared against " + baselineFile + ":");
+		for (String key : new TreeSet<String>(baseline.stringPropertyNames())) {
+			if (!results.containsKey(key) || key.startsWith("gc.") || key.startsWith("max.")
+					|| key.startsWith("setting.")) {
+				continue;
+			}
+			double before;
+			double now;
+			try {
+				before = Double.parseDouble(baseline.getProperty(key));
+				now = Double.parseDouble(results.getProperty(key));
+			} catch (NumberFormatException e) {
+				continue;
+			}
+
+			// Allocation should not rise by more than a few bytes, throughput
+			// should not drop, everything else should not rise. A rise from
+			// zero is always a regression.
+			String change;
+			boolean regressed;
+			if (key.startsWith("alloc.")) {
+				change = String.format("%+.1f B", now - before);
+				regressed = now - before > ALLOC_SLACK_BYTES;
+			} else if (before == 0) {
+				change = (now == 0) ? "+0.0%" : "new";
+				regressed = !key.startsWith("throughput.") && now > 0;
+			} else {
+				double percent = 100 * (now - before) / before;
+				change = String.format("%+.1f%%", percent);
+				regressed = key.startsWith("throughput.") ? percent < -tolerance : percent > tolerance;
+			}
+			System.out.printf("  %-22s %12s -> %12s  %8s%s%n", key, format(before), format(now), change,
+					regressed ? "  REGRESSION" : "");
+			passed &= !regressed;
+		}
+		return passed;
+	}
+
+	/**
+	 * Reads the queries from the trace file, or picks random vertex pairs
+	 */
+	private static void readQueries(List<Vertex> vertexList, Random random) {
+		List<Vertex> from = new ArrayList<Vertex>();
+		List<Vertex> to = new ArrayList<Vertex>();
+		if (traceFile != null) {
+			Scanner s = null;
+			try {
+				s = new Scanner(new File(traceFile));
+			} catch (FileNotFoundException e1) {
+				System.err.println("FILE NOT FOUND: " + traceFile);
+				System.exit(2);
+			}
+			while (s.hasNext()) {
+				try {
+					from.add(new Vertex(s.next()));
+					to.add(new Vertex(s.next()));
+				} catch (NoSuchElementException e2) {
+					System.err.println("TRACE FILE FORMAT INCORRECT");
+					System.exit(3);
+				}
+			}
+			s.close();
+
+			// Every traced vertex has to be in the graph
+			Set<Vertex> known = new HashSet<Vertex>(vertexList);
+			for (int i = 0; i < from.size(); i++) {
+				if (!known.contains(from.get(i)) || !known.contains(to.get(i))) {
+					System.err.println("no such vertex in trace: " + from.get(i) + " " + to.get(i));
+					System.exit(3);
+				}
+			}
+		} else {
+			for (int i = 0; i < queries; i++) {
+				from.add(vertexList.get(random.nextInt(vertexList.size())));
+				to.add(vertexList.get(random.nextInt(vertexList.size())));
+			}
+		}
+		if (from.isEmpty()) {
+			System.err.println("NO QUERIES");
+			System.exit(3);
+		}
+		origins = from.toArray(new Vertex[from.size()]);
+		destinations = to.toArray(new Vertex[to.size()]);
+	}
+
+	/**
+	 * Builds a random graph where every vertex has the given out-degree. A
+	 * pair of vertices always gets the same weight so edges never conflict.
+	 */
+	private static MyGraph randomGraph(int n, int d, Random random) {
+		List<Vertex> v = new ArrayList<Vertex>(n);
+		for (int i = 0; i < n; i++) {
+			v.add(new Vertex("v" + i));
+		}
+		List<Edge> e = new ArrayList<Edge>(n * d);
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < d; j++) {
+				int to = random.nextInt(n);
+				e.add(new Edge(v.get(i), v.get(to), 1 + (i * 31 + to) % 1000));
+			}
+		}
+		return new MyGraph(v, e);
+	}
+
+	/**
+	 * Get the latency at the given percentile of a sorted array
+	 */
+	private static long percentile(long[] sorted, double pct) {
+		int index = (int) Math.ceil(pct / 100 * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+	}
+
+	private static String format(double value) {
+		return String.format("%.2f", value);
+	}
+
+	/**
+	 * Reads the --name value options into the settings
+	 */
+	private static void parseArgs(String[] args) {
+		try {
+			for (int i = 0; i < args.length; i += 2) {
+				String name = args[i];
+				String value = args[i + 1];
+				if (name.equals("--vertices")) {
+					vertexFile = value;
+				} else if (name.equals("--edges")) {
+					edgeFile = value;
+				} else if (name.equals("--size")) {
+					size = Integer.parseInt(value);
+				} else if (name.equals("--degree")) {
+					degree = Integer.parseInt(value);
+				} else if (name.equals("--trace")) {
+					traceFile = value;
+				} else if (name.equals("--queries")) {
+					queries = Integer.parseInt(value);
+				} else if (name.equals("--warmup")) {
+					warmup = Integer.parseInt(value);
+				} else if (name.equals("--rate")) {
+					rate = Double.parseDouble(value);
+				} else if (name.equals("--concurrency")) {
+					concurrency = Integer.parseInt(value);
+				} else if (name.equals("--baseline")) {
+					baselineFile = value;
+				} else if (name.equals("--save-baseline")) {
+					saveBaselineFile = value;
+				} else if (name.equals("--tolerance")) {
+					tolerance = Double.parseDouble(value);
+				} else if (name.equals("--seed")) {
+					seed = Long.parseLong(value);
+				} else if (name.equals("--cost-only")) {
+					costOnly = Boolean.parseBoolean(value);
+				} else {
+					throw new IllegalArgumentException(name);
+				}
+			}
+		} catch (RuntimeException e) {
+			System.err.println("USAGE: java LoadTest [--vertices FILE --edges FILE | --size N --degree D]"
+					+ " [--trace FILE] [--queries N] [--warmup N] [--rate QPS] [--concurrency C]"
+					+ " [--save-baseline FILE] [--baseline FILE] [--tolerance PCT] [--seed S] [--cost-only true]");
+			System.exit(1);
+		}
+		if ((vertexFile == null) != (edgeFile == null) || queries < 1 || concurrency < 1) {
+			System.err.println("USAGE: java LoadTest --vertices and --edges go together;"
+					+ " --queries and --concurrency must be positive");
+			System.exit(1);
+		}
+	}
+}
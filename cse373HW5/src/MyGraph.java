@@ -1,4 +1,5 @@
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * A representation of a graph. Assumes that we do not have negative cost edges
@@ -8,10 +9,43 @@ public class MyGraph implements Graph {
 	private Collection<Edge> edges;
 	private Collection<Vertex> vertices;
 	private Map<Vertex, ArrayList<Vertex>> adjacentVertices;
+	private Map<Vertex, ArrayList<Vertex>> incomingVertices;
+	
+	// Vertices by internal index, and the index of each vertex
+	private Vertex[] vertexArray;
+	private Map<Vertex, Integer> vertexIndex;
+	
+	// Outgoing edges grouped by source index: the edges out of vertex i are
+	// outTargets[outStart[i]] ... outTargets[outStart[i + 1] - 1], in the
+	// order they were given, with their weights in outWeights
+	private int[] outStart;
+	private int[] outTargets;
+	private int[] outWeights;
+	
+	// Incoming edges grouped the same way by destination index
+	private int[] inStart;
+	private int[] inSources;
+	private int[] inWeights;
+	
+	// How searches relax the edges of high-degree vertices
+	private volatile RelaxationMode relaxationMode = RelaxationMode.SCALAR;
+	
+	// Vertices with fewer edges than this are always relaxed one at a time
+	private static final int VECTOR_MIN_DEGREE = 32;
+	
+	// The SIMD kernel for VECTOR relaxation, or null when it is not available
+	private static final RelaxKernel VECTOR_KERNEL = loadVectorKernel();
+	
+	// Scratch space for the searches run by each thread
+	private ThreadLocal<SearchWorkspace> workspaces;
+	
+	// Edge collections smaller than this are always built on one thread
+	private static final int PARALLEL_THRESHOLD = 100000;
 
 	/**
 	 * Creates a MyGraph object with the given collection of vertices and the
-	 * given collection of edges.
+	 * given collection of edges. Large edge collections are processed on one
+	 * thread per available processor.
 	 * 
 	 * @param v
 	 *            a collection of the vertices in this graph
@@ -25,68 +59,254 @@ public class MyGraph implements Graph {
 	 * 			  if an input collection of edges has a problem
 	 */
 	public MyGraph(Collection<Vertex> v, Collection<Edge> e) {
-		// Check for erroneous data first
-		for (Edge curEdge : e) {
-			// Checking negative weights
-			if (curEdge.getWeight() < 0) {
-				throw new NegativeWeightException();
-				
-			// Check for valid destinations and sources
-			} else if (!v.contains(curEdge.getDestination()) || !v.contains(curEdge.getSource())) {
-				throw new IncorrectVertexException();
-				
-			// Check if any edges have conflicting weights
-			} else {
-				for (Edge anyEdge : e) {
-					if (anyEdge.getDestination().equals(curEdge.getDestination())
-							&& anyEdge.getSource().equals(curEdge.getSource())
-							&& anyEdge.getWeight() != curEdge.getWeight()) {
-						throw new IncorrectEdgeException();
-					}
-				}
-			}
+		this(v, e, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a MyGraph object with the given collection of vertices and the
+	 * given collection of edges, using up to the given number of threads. The
+	 * graph built is the same for any number of threads: vertices keep their
+	 * given order, and each vertex's adjacent and incoming vertices keep the
+	 * order of their edges in e.
+	 * 
+	 * @param v
+	 *            a collection of the vertices in this graph
+	 * @param e
+	 *            a collection of the edges in this graph
+	 * @param threads
+	 *            the most threads to use, 1 to build serially
+	 * @throws NegativeWeightException
+	 * 			  if an edge has a negative weight
+	 * @throws IncorrectVertexException
+	 * 			  if an input collection of vertices has a problem
+	 * @throws IncorrectEdgeException
+	 * 			  if an input collection of edges has a problem
+	 */
+	public MyGraph(Collection<Vertex> v, Collection<Edge> e, int threads) {
+		this(v, e, threads, VertexOrdering.FILE);
+	}
+
+	/**
+	 * Creates a MyGraph object with the given collection of vertices and the
+	 * given collection of edges, using up to the given number of threads and
+	 * numbering the vertices internally in the given order. The ordering only
+	 * changes where each vertex's search data is kept in memory: vertices(),
+	 * edges() and the adjacent and incoming vertices are the same for every
+	 * ordering, and so are the path costs found.
+	 * 
+	 * @param v
+	 *            a collection of the vertices in this graph
+	 * @param e
+	 *            a collection of the edges in this graph
+	 * @param threads
+	 *            the most threads to use, 1 to build serially
+	 * @param ordering
+	 *            how to number the vertices internally
+	 * @throws NegativeWeightException
+	 * 			  if an edge has a negative weight
+	 * @throws IncorrectVertexException
+	 * 			  if an input collection of vertices has a problem
+	 * @throws IncorrectEdgeException
+	 * 			  if an input collection of edges has a problem
+	 * @throws IllegalArgumentException
+	 *             if ordering is null
+	 */
+	public MyGraph(Collection<Vertex> v, Collection<Edge> e, int threads, VertexOrdering ordering) {
+		if (ordering == null) {
+			throw new IllegalArgumentException("null");
 		}
 		
-		// No defined errors should exist beyond here, safe to allocate
-		// memory for data fields
-		edges = new ArrayList<Edge>();
-		vertices = new ArrayList<Vertex>();
-		adjacentVertices = new HashMap<Vertex, ArrayList<Vertex>>();
-		
-		// Copy over all vertices
+		// Give each distinct vertex label an index, keeping the first copy
+		vertexIndex = new HashMap<Vertex, Integer>();
+		List<Vertex> vertexList = new ArrayList<Vertex>();
 		for (Vertex curVertex : v) {
-			vertices.add(new Vertex(curVertex.getLabel(), curVertex.getPath(), curVertex.getDistance()));
+			if (!vertexIndex.containsKey(curVertex)) {
+				vertexIndex.put(curVertex, vertexList.size());
+				vertexList.add(new Vertex(curVertex.getLabel(), curVertex.getPath(), curVertex.getDistance()));
+			}
 		}
+		vertexArray = vertexList.toArray(new Vertex[vertexList.size()]);
+		final int n = vertexArray.length;
 		
-		// Copy edges and link to existing vertices
-		for (Edge curEdge : e) {
+		// Split the edges into one chunk per thread
+		final Edge[] edgeArray = e.toArray(new Edge[e.size()]);
+		final int m = edgeArray.length;
+		int chunks = (m < PARALLEL_THRESHOLD) ? 1 : Math.max(1, Math.min(threads, m / PARALLEL_THRESHOLD));
+		ExecutorService pool = (chunks > 1) ? Executors.newFixedThreadPool(chunks) : null;
+		try {
+			// Check for erroneous data first. Each chunk checks its edges,
+			// looks up their endpoint indices and counts the degree of every
+			// vertex within the chunk.
+			final int[] sources = new int[m];
+			final int[] destinations = new int[m];
+			final int[][] outCounts = new int[chunks][n];
+			final int[][] inCounts = new int[chunks][n];
+			final int[] firstError = new int[chunks];
+			final RuntimeException[] errors = new RuntimeException[chunks];
+			forEachRange(pool, m, chunks, new RangeTask() {
+				public void run(int chunk, int from, int to) {
+					int[] outCount = outCounts[chunk];
+					int[] inCount = inCounts[chunk];
+					for (int i = from; i < to; i++) {
+						Integer source = vertexIndex.get(edgeArray[i].getSource());
+						Integer destination = vertexIndex.get(edgeArray[i].getDestination());
+						
+						// Checking negative weights, then valid destinations
+						// and sources; remember the first problem in the chunk
+						if (edgeArray[i].getWeight() < 0) {
+							errors[chunk] = new NegativeWeightException();
+						} else if (source == null || destination == null) {
+							errors[chunk] = new IncorrectVertexException();
+						}
+						if (errors[chunk] != null) {
+							firstError[chunk] = i;
+							return;
+						}
+						sources[i] = source;
+						destinations[i] = destination;
+						outCount[source]++;
+						inCount[destination]++;
+					}
+				}
+			});
 			
-			// Find source and destination vertices
-			Vertex edgeDestination = null;
-			Vertex edgeSource = null;
-			for (Vertex aVertex : vertices) {
-				if (aVertex.equals(curEdge.getSource())) {
-					edgeSource = aVertex;
-				} else if (aVertex.equals(curEdge.getDestination())) {
-					edgeDestination = aVertex;
+			// Report the problem with the earliest edge, as a serial pass would
+			for (int chunk = 0; chunk < chunks; chunk++) {
+				if (errors[chunk] != null) {
+					throw errors[chunk];
 				}
 			}
 			
-			// Add edge with correct source, destination, and weight
-			edges.add(new Edge(edgeSource, edgeDestination, curEdge.getWeight()));
-		}
-		
-		// Initialize the adjacent vertices list with each vertex and
-		// an empty list of vertices potentially adjacent to it
-		for (Vertex curVertex : vertices) {
-			adjacentVertices.put(curVertex, new ArrayList<Vertex>());
-		}
-		
-		// Add each source's destination to its adjacent list
-		for (Edge curEdge : edges) {
-			adjacentVertices.get(curEdge.getSource()).add(curEdge.getDestination());
+			// Lay out the edges grouped by vertex: work out where each
+			// vertex's edges start, then where each chunk's share of them starts
+			outStart = new int[n + 1];
+			inStart = new int[n + 1];
+			for (int i = 0; i < n; i++) {
+				int outDegree = 0;
+				int inDegree = 0;
+				for (int chunk = 0; chunk < chunks; chunk++) {
+					outDegree += outCounts[chunk][i];
+					inDegree += inCounts[chunk][i];
+				}
+				outStart[i + 1] = outStart[i] + outDegree;
+				inStart[i + 1] = inStart[i] + inDegree;
+			}
+			forEachRange(pool, n, chunks, new RangeTask() {
+				public void run(int part, int from, int to) {
+					// Turn each chunk's counts into its next free position
+					for (int i = from; i < to; i++) {
+						int outNext = outStart[i];
+						int inNext = inStart[i];
+						for (int chunk = 0; chunk < outCounts.length; chunk++) {
+							int outCount = outCounts[chunk][i];
+							int inCount = inCounts[chunk][i];
+							outCounts[chunk][i] = outNext;
+							inCounts[chunk][i] = inNext;
+							outNext += outCount;
+							inNext += inCount;
+						}
+					}
+				}
+			});
+			
+			// Place every edge in its source's and destination's group,
+			// and link a copy of it to the local vertices
+			outTargets = new int[m];
+			outWeights = new int[m];
+			inSources = new int[m];
+			inWeights = new int[m];
+			final Edge[] linkedEdges = new Edge[m];
+			forEachRange(pool, m, chunks, new RangeTask() {
+				public void run(int chunk, int from, int to) {
+					int[] outNext = outCounts[chunk];
+					int[] inNext = inCounts[chunk];
+					for (int i = from; i < to; i++) {
+						int weight = edgeArray[i].getWeight();
+						int out = outNext[sources[i]]++;
+						outTargets[out] = destinations[i];
+						outWeights[out] = weight;
+						int in = inNext[destinations[i]]++;
+						inSources[in] = sources[i];
+						inWeights[in] = weight;
+						linkedEdges[i] = new Edge(vertexArray[sources[i]], vertexArray[destinations[i]], weight);
+					}
+				}
+			});
+			
+			// Check if any edges have conflicting weights, one source at a time
+			final boolean[] conflicts = new boolean[chunks];
+			forEachRange(pool, n, chunks, new RangeTask() {
+				public void run(int part, int from, int to) {
+					// Weight of the last edge seen into each vertex, valid only
+					// when seenFrom says it was seen from the current source
+					int[] seenFrom = new int[n];
+					int[] seenWeight = new int[n];
+					for (int i = from; i < to; i++) {
+						for (int j = outStart[i]; j < outStart[i + 1]; j++) {
+							int target = outTargets[j];
+							if (seenFrom[target] == i + 1 && seenWeight[target] != outWeights[j]) {
+								conflicts[part] = true;
+								return;
+							}
+							seenFrom[target] = i + 1;
+							seenWeight[target] = outWeights[j];
+						}
+					}
+				}
+			});
+			for (boolean conflict : conflicts) {
+				if (conflict) {
+					throw new IncorrectEdgeException();
+				}
+			}
+			
+			// No defined errors should exist beyond here, fill in the
+			// collections of vertices and edges
+			vertices = new ArrayList<Vertex>(Arrays.asList(vertexArray));
+			edges = new ArrayList<Edge>(Arrays.asList(linkedEdges));
+			
+			// Renumber the vertices so that ones searched together sit
+			// together in memory, after the collections have kept the
+			// given order
+			if (ordering != VertexOrdering.FILE) {
+				renumber(localityOrder(ordering));
+			}
+			
+			// Build each vertex's list of adjacent and incoming vertices
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			final ArrayList<Vertex>[] adjacentLists = new ArrayList[n];
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			final ArrayList<Vertex>[] incomingLists = new ArrayList[n];
+			forEachRange(pool, n, chunks, new RangeTask() {
+				public void run(int part, int from, int to) {
+					for (int i = from; i < to; i++) {
+						adjacentLists[i] = new ArrayList<Vertex>(outStart[i + 1] - outStart[i]);
+						for (int j = outStart[i]; j < outStart[i + 1]; j++) {
+							adjacentLists[i].add(vertexArray[outTargets[j]]);
+						}
+						incomingLists[i] = new ArrayList<Vertex>(inStart[i + 1] - inStart[i]);
+						for (int j = inStart[i]; j < inStart[i + 1]; j++) {
+							incomingLists[i].add(vertexArray[inSources[j]]);
+						}
+					}
+				}
+			});
+			adjacentVertices = new HashMap<Vertex, ArrayList<Vertex>>();
+			incomingVertices = new HashMap<Vertex, ArrayList<Vertex>>();
+			for (int i = 0; i < n; i++) {
+				adjacentVertices.put(vertexArray[i], adjacentLists[i]);
+				incomingVertices.put(vertexArray[i], incomingLists[i]);
+			}
+			workspaces = new ThreadLocal<SearchWorkspace>() {
+				protected SearchWorkspace initialValue() {
+					return new SearchWorkspace(n);
+				}
+			};
+		} finally {
+			if (pool != null) {
+				pool.shutdown();
+			}
 		}
-
 	}
 
 	/**
@@ -141,6 +361,28 @@ public class MyGraph implements Graph {
 		return adjacentVertices.get(v);
 	}
 
+	/**
+	 * Return a collection of vertices with an edge into a given vertex v. i.e.,
+	 * the set of all vertices u where edges u -> v exist in the graph. Return
+	 * an empty collection if there are no incoming vertices.
+	 * 
+	 * @param v
+	 *            one of the vertices in the graph
+	 * @return an iterable collection of vertices with an edge into v
+	 * @throws IllegalArgumentException
+	 *             if v does not exist.
+	 */
+	
+	public Collection<Vertex> incomingVertices(Vertex v) {
+		// Throw an error if the vertex does not exist
+		if (!incomingVertices.containsKey(v)) {
+			throw new IllegalArgumentException();
+		}
+		
+		// Get the values with an edge into vertex v and return them
+		return incomingVertices.get(v);
+	}
+
 	/**
 	 * Test whether vertex b is adjacent to vertex a (i.e. a -> b) in a directed
 	 * graph. Assumes that we do not have negative cost edges in the graph.
@@ -157,28 +399,21 @@ public class MyGraph implements Graph {
 	
 	public int edgeCost(Vertex a, Vertex b) {
 		// Make sure vertices exist
-		if (!vertices.contains(a) || !vertices.contains(b)) {
+		Integer from = vertexIndex.get(a);
+		Integer to = vertexIndex.get(b);
+		if (from == null || to == null) {
 			throw new IllegalArgumentException();
 		}
-		// Initialize the cost
-		int cost = -1;
-		
-		// Make sure that b is adjacent to a
-		if (!adjacentVertices.get(a).contains(b)) {
-			// Return default value of cost, -1
-			return cost;
 		
-		// Analyze list of edges to find the correct edge.
-		} else {
-			for (Edge curEdge : edges) {
-				// Set cost to the edge weight if source matches a, destination matches b
-				if (curEdge.getSource().equals(a) && curEdge.getDestination().equals(b)) {
-					cost = curEdge.getWeight();
-				}
+		// Look through the edges out of a for one into b
+		for (int i = outStart[from]; i < outStart[from + 1]; i++) {
+			if (outTargets[i] == to) {
+				return outWeights[i];
 			}
-			// Return the cost of going from a to b
-			return cost;
 		}
+		
+		// Return default value of cost, -1
+		return -1;
 	}
 
 	/**
@@ -198,148 +433,561 @@ public class MyGraph implements Graph {
 	 */
 	public Path shortestPath(Vertex a, Vertex b) {
 		// Check if vertices exist
-		if (!vertices.contains(a) || !vertices.contains(b)) {
-			throw new IllegalArgumentException();
+		int from = indexOf(a);
+		int to = indexOf(b);
+		
+		// Find the shortest path using dijkstra's algorithm, stopping
+		// once b is known
+		SearchWorkspace workspace = workspaces.get();
+		workspace.begin();
+		workspace.markTarget(to);
+		dijkstra(workspace, from, false, 1, Integer.MAX_VALUE);
+		
+		// Read the path out of the workspace
+		return pathTo(workspace, from, to);
+	}
+	
+	/**
+	 * Returns the cost of the shortest path from a to b in the graph, like
+	 * shortestPath but without building the path. Once the calling thread has
+	 * run a query, this allocates no memory.
+	 * 
+	 * @param a
+	 *            the starting vertex
+	 * @param b
+	 *            the destination vertex
+	 * @return the cost of the shortest path from a to b, or -1 if b is not
+	 *         reachable from a.
+	 * @throws IllegalArgumentException
+	 *             if a or b does not exist.
+	 */
+	public int shortestPathCost(Vertex a, Vertex b) {
+		// Check if vertices exist
+		int from = indexOf(a);
+		int to = indexOf(b);
+		
+		// Find the shortest path using dijkstra's algorithm, stopping
+		// once b is known
+		SearchWorkspace workspace = workspaces.get();
+		workspace.begin();
+		workspace.markTarget(to);
+		dijkstra(workspace, from, false, 1, Integer.MAX_VALUE);
+		
+		return workspace.isSettled(to) ? workspace.distance(to) : -1;
+	}
+	
+	/**
+	 * Returns the shortest paths from a to each of the given targets, found
+	 * with a single run of Dijkstra's algorithm that stops as soon as every
+	 * target is known. Assumes all edge weights are nonnegative.
+	 * 
+	 * @param a
+	 *            the starting vertex
+	 * @param targets
+	 *            the destination vertices
+	 * @return a map from each target to its shortest path from a, in the same
+	 *         form as returned by shortestPath. A target maps to null if it is
+	 *         not reachable from a.
+	 * @throws IllegalArgumentException
+	 *             if a or any target does not exist.
+	 */
+	public Map<Vertex, Path> shortestPaths(Vertex a, Collection<Vertex> targets) {
+		// Check if vertices exist
+		int from = indexOf(a);
+		for (Vertex target : targets) {
+			indexOf(target);
+		}
+		
+		// Mark each distinct target in the workspace
+		SearchWorkspace workspace = workspaces.get();
+		workspace.begin();
+		int targetsLeft = 0;
+		for (Vertex target : targets) {
+			if (workspace.markTarget(vertexIndex.get(target))) {
+				targetsLeft++;
+			}
 		}
 		
-		// Find a and b in the local vertex list
-		for(Vertex curVertex : vertices) {
-			if(curVertex.equals(a)){
-				a = curVertex;
-			} else if(curVertex.equals(b)) {
-				b = curVertex;
-			}	
+		// Find the shortest paths using dijkstra's algorithm, stopping
+		// once every target is known
+		dijkstra(workspace, from, false, targetsLeft, Integer.MAX_VALUE);
+		
+		// Read each target's path out of the workspace
+		Map<Vertex, Path> paths = new HashMap<Vertex, Path>();
+		for (Vertex target : targets) {
+			int to = vertexIndex.get(target);
+			paths.put(vertexArray[to], pathTo(workspace, from, to));
 		}
+		return paths;
+	}
+	
+	/**
+	 * Returns every vertex that can be reached from a with a path costing at
+	 * most maxCost, together with that cost. Uses Dijkstra's algorithm, but
+	 * never looks past a vertex costing more than the budget, so the work done
+	 * depends on the size of the result and not on the size of the graph.
+	 * 
+	 * @param a
+	 *            the starting vertex
+	 * @param maxCost
+	 *            the most a path may cost
+	 * @return a map from each reachable vertex to the cost of its shortest
+	 *         path from a, iterating in order of increasing cost starting with
+	 *         a itself. Empty if maxCost is negative.
+	 * @throws IllegalArgumentException
+	 *             if a does not exist.
+	 */
+	public Map<Vertex, Integer> isochrone(Vertex a, int maxCost) {
+		// Check if the vertex exists
+		int from = indexOf(a);
 		
-		// Check simplest case when begin point and end point are the same
-		if(a.equals(b)){
-			List<Vertex> shortList = new ArrayList<Vertex>();
-			shortList.add(a);
-			return new Path(shortList, 0);
+		// Vertices in the order they become known, with their final cost
+		Map<Vertex, Integer> reachable = new LinkedHashMap<Vertex, Integer>();
+		if (maxCost < 0) {
+			return reachable;
 		}
 		
-		// Find the shortest path using dijkstra's algorithm
-		dijkstra(a);
+		// Search everything within the budget
+		SearchWorkspace workspace = workspaces.get();
+		workspace.begin();
+		dijkstra(workspace, from, false, -1, maxCost);
 		
-		// Create a list to hold the shortest path
-		List<Vertex> shortList = new ArrayList<Vertex>();
+		for (int i = 0; i < workspace.settledCount(); i++) {
+			int v = workspace.settledVertex(i);
+			reachable.put(vertexArray[v], workspace.distance(v));
+		}
+		return reachable;
+	}
+	
+	/**
+	 * Returns the shortest path from every vertex in the graph to the target,
+	 * found with a single run of Dijkstra's algorithm over the incoming edges.
+	 * Assumes all edge weights are nonnegative.
+	 * 
+	 * @param target
+	 *            the destination vertex shared by every path
+	 * @return a map from each vertex that can reach the target to its shortest
+	 *         path, in the same form as returned by shortestPath. Vertices that
+	 *         cannot reach the target are not in the map.
+	 * @throws IllegalArgumentException
+	 *             if target does not exist.
+	 */
+	public Map<Vertex, Path> shortestPathTreeTo(Vertex target) {
+		// Check if the vertex exists
+		int to = indexOf(target);
 		
-		// Traverse through the shortest path in the vertex objects until
-		// the beginning vertex is reached.
-		Vertex temp = b;
-		while(!temp.equals(a)) {
-			// Return a null path if there is a dead end
-			if(temp.getPath() == null) {
-				resetVertices();
-				return null;
-			}
-			// Add the vertex to the shortest path
-			shortList.add(temp);
+		// Run dijkstra's algorithm backwards from the target, so each vertex's
+		// previous vertex is the next one on its way to the target
+		SearchWorkspace workspace = workspaces.get();
+		workspace.begin();
+		dijkstra(workspace, to, true, -1, Integer.MAX_VALUE);
+		
+		Map<Vertex, Path> tree = new HashMap<Vertex, Path>();
+		for (int i = 0; i < workspace.settledCount(); i++) {
+			int source = workspace.settledVertex(i);
 			
-			// Go to the next vertex
-			temp = temp.getPath();
+			// Follow the next hops to the target, then reverse them so the
+			// list runs from the target back to the source like shortestPath
+			List<Vertex> shortList = new ArrayList<Vertex>();
+			if (source == to) {
+				shortList.add(vertexArray[to]);
+			}
+			for (int temp = workspace.previous(source); temp != -1; temp = workspace.previous(temp)) {
+				shortList.add(vertexArray[temp]);
+			}
+			Collections.reverse(shortList);
+			tree.put(vertexArray[source], new Path(shortList, workspace.distance(source)));
+		}
+		return tree;
+	}
+	
+	/**
+	 * Returns the path from a to b left in the workspace by a forward run of
+	 * dijkstra's algorithm from a
+	 * 
+	 * @param workspace
+	 *            the workspace the search ran in
+	 * @param a
+	 *            the index of the vertex dijkstra's algorithm started from
+	 * @param b
+	 *            the index of the destination vertex
+	 * @return the path from a to b, in the same form as returned by
+	 *         shortestPath, or null if b was not reached
+	 */
+	private Path pathTo(SearchWorkspace workspace, int a, int b) {
+		// Check simplest case when begin point and end point are the same
+		List<Vertex> shortList = new ArrayList<Vertex>();
+		if (a == b) {
+			shortList.add(vertexArray[a]);
+			return new Path(shortList, 0);
 		}
 		
-		// B's distance field will contain the total path cost
-		int pathLen = b.getDistance();
+		// Return a null path if there is a dead end
+		if (!workspace.isSettled(b)) {
+			return null;
+		}
 		
-		// Reset all vertex fields for the next runthrough
-		resetVertices();
+		// Traverse through the shortest path until the beginning vertex
+		// is reached.
+		for (int temp = b; temp != a; temp = workspace.previous(temp)) {
+			shortList.add(vertexArray[temp]);
+		}
 		
-		// Create a new path and return it
-		return new Path(shortList, pathLen);
+		// B's distance will contain the total path cost
+		return new Path(shortList, workspace.distance(b));
 	}
 	
-	
 	/**
-	 * Runs dijkstra's algorithm on a list of vertices to find
-	 * the shortest path
+	 * Runs dijkstra's algorithm in a workspace that has just begun a search.
+	 * Only vertices the search reaches are touched, so nothing needs resetting
+	 * afterwards.
 	 * 
+	 * @param workspace
+	 *            where to keep the distances, with any targets marked
 	 * @param start
-	 *            The start vertex in a graph of vertices to analyze
+	 *            the index of the vertex to start from
+	 * @param reverse
+	 *            true to follow edges backwards, finding the shortest paths
+	 *            into start rather than out of it
+	 * @param targetsLeft
+	 *            the number of marked targets to stop after once they are all
+	 *            known, or -1 to analyze every reachable vertex
+	 * @param maxCost
+	 *            vertices further than this from start are not analyzed
 	 */
-	private void dijkstra (Vertex start) {
-		// List of unknown vertices
-		Collection<Vertex> vList = new ArrayList<Vertex>();
-		
-		// Find the start vertex in the list of vertices
-		for (Vertex curVertex: vertices) {
-			curVertex.setPath(null);
-			if(curVertex.getLabel().equals(start.getLabel())) {
-				// Set distance to zero
-				curVertex.setDistance(0);
-			}
-			// Add every vertex to the unknown list
-			vList.add(curVertex);
-		}
-		boolean deadEnd = false;
-		// Analyze until all nodes are known
-		while(!vList.isEmpty() && !deadEnd) {
+	private void dijkstra(SearchWorkspace workspace, int start, boolean reverse, int targetsLeft, int maxCost) {
+		// Edges are followed backwards through the incoming lists when reversed
+		int[] edgeStart = reverse ? inStart : outStart;
+		int[] edgeEnd = reverse ? inSources : outTargets;
+		int[] edgeWeight = reverse ? inWeights : outWeights;
+		RelaxKernel kernel = (relaxationMode == RelaxationMode.VECTOR) ? VECTOR_KERNEL : null;
+		
+		DistanceHeap heap = workspace.heap();
+		workspace.reach(start, 0, -1);
+		
+		// Analyze until all reachable nodes (or all targets) are known
+		while (!heap.isEmpty() && targetsLeft != 0) {
 			// Choose the least costly option at the time
-			Vertex v = smallestDist(vList);
+			int v = DistanceHeap.idOf(heap.removeMin());
 			
-			if (v == null) {
-				deadEnd = true;
-			} else {
-				// Set node to known and remove it form the list
-				v.setKnown(true);
-				vList.remove(v);
-	
-				// Check all of the adjacent vertices and calculate
-				// the current cost
-				for(Vertex adjVertex : adjacentVertices.get(v)) {
-					
-					// Only check unknown vertices
-					if(!adjVertex.getKnown()) {
-						
-						// Cost of going from the current vertex to the unknown adjacent vertex
-						int tempCost = edgeCost(v,adjVertex);
-						
-						// Update the minimum cost and lest expensive path of the node if it is lower
-						// than what it was previously
-						if((v.getDistance() + tempCost) < adjVertex.getDistance()) {
-							adjVertex.setDistance(v.getDistance() + tempCost);
-							adjVertex.setPath(v);
-						}
+			// Skip entries left behind when a cheaper path was found
+			if (workspace.isSettled(v)) {
+				continue;
+			}
+			workspace.settle(v);
+			
+			// Count down the targets, their paths are final once known
+			if (workspace.isTarget(v)) {
+				targetsLeft--;
+			}
+			
+			// Update the cost and path of each unknown adjacent vertex if it
+			// is lower than what it was previously and within the budget
+			int distance = workspace.distance(v);
+			if (kernel != null && edgeStart[v + 1] - edgeStart[v] >= VECTOR_MIN_DEGREE) {
+				workspace.relaxPicked(kernel, v, distance, edgeEnd, edgeWeight, edgeStart[v], edgeStart[v + 1],
+						maxCost);
+				continue;
+			}
+			for (int i = edgeStart[v]; i < edgeStart[v + 1]; i++) {
+				int adjVertex = edgeEnd[i];
+				int cost = distance + edgeWeight[i];
+				if (!workspace.isSettled(adjVertex) && cost >= 0 && cost <= maxCost
+						&& cost < workspace.distance(adjVertex)) {
+					workspace.reach(adjVertex, cost, v);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Set how searches relax the edges out of each vertex they settle
+	 * 
+	 * @param mode
+	 *            SCALAR to relax one edge at a time, VECTOR to relax the edges
+	 *            of high-degree vertices with SIMD instructions. VECTOR acts
+	 *            as SCALAR unless mode.isAvailable().
+	 */
+	public void setRelaxationMode(RelaxationMode mode) {
+		if (mode == null) {
+			throw new IllegalArgumentException("null");
+		}
+		relaxationMode = mode;
+	}
+	
+	/**
+	 * Loads the SIMD relaxation kernel, which is only on the class path when
+	 * src-vector was compiled, and only links when the jdk.incubator.vector
+	 * module is enabled
+	 * 
+	 * @return the kernel, or null if it cannot be used
+	 */
+	private static RelaxKernel loadVectorKernel() {
+		try {
+			return (RelaxKernel) Class.forName("VectorRelaxKernel").getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			// Not compiled in
+			return null;
+		} catch (LinkageError e) {
+			// Compiled in, but the module is not enabled
+			return null;
+		}
+	}
+	
+	/**
+	 * Works out an internal numbering of the vertices that improves locality,
+	 * treating every edge as undirected
+	 * 
+	 * @param ordering
+	 *            the kind of numbering, not FILE
+	 * @return the current index of the vertex to number 0, 1, ... in turn
+	 */
+	private int[] localityOrder(VertexOrdering ordering) {
+		int n = vertexArray.length;
+		int[] degree = new int[n];
+		int maxDegree = 0;
+		for (int i = 0; i < n; i++) {
+			degree[i] = (outStart[i + 1] - outStart[i]) + (inStart[i + 1] - inStart[i]);
+			maxDegree = Math.max(maxDegree, degree[i]);
+		}
+		
+		// Vertices by increasing degree, or decreasing for HUB, ties kept in
+		// file order; the degree goes in the high half so a plain sort works
+		long[] byDegree = new long[n];
+		for (int i = 0; i < n; i++) {
+			int key = (ordering == VertexOrdering.HUB) ? maxDegree - degree[i] : degree[i];
+			byDegree[i] = ((long) key << 32) | i;
+		}
+		Arrays.sort(byDegree);
+		int[] order = new int[n];
+		if (ordering == VertexOrdering.HUB) {
+			// The busiest vertices share the first cache lines
+			for (int i = 0; i < n; i++) {
+				order[i] = (int) byDegree[i];
+			}
+			return order;
+		}
+		
+		// Breadth first numbering, one component at a time. BFS starts each
+		// component at its first vertex in file order and visits neighbors in
+		// edge order; RCM starts at the component's lowest degree vertex,
+		// visits neighbors by increasing degree and reverses the result.
+		boolean rcm = (ordering == VertexOrdering.RCM);
+		boolean[] numbered = new boolean[n];
+		long[] scratch = rcm ? new long[n] : null;
+		int count = 0;
+		for (int root = 0; root < n; root++) {
+			int start = rcm ? (int) byDegree[root] : root;
+			if (numbered[start]) {
+				continue;
+			}
+			numbered[start] = true;
+			order[count++] = start;
+			for (int head = count - 1; head < count; head++) {
+				int u = order[head];
+				int first = count;
+				for (int j = outStart[u]; j < outStart[u + 1]; j++) {
+					if (!numbered[outTargets[j]]) {
+						numbered[outTargets[j]] = true;
+						order[count++] = outTargets[j];
 					}
 				}
+				for (int j = inStart[u]; j < inStart[u + 1]; j++) {
+					if (!numbered[inSources[j]]) {
+						numbered[inSources[j]] = true;
+						order[count++] = inSources[j];
+					}
+				}
+				if (rcm && count - first > 1) {
+					for (int j = first; j < count; j++) {
+						scratch[j] = ((long) degree[order[j]] << 32) | order[j];
+					}
+					Arrays.sort(scratch, first, count);
+					for (int j = first; j < count; j++) {
+						order[j] = (int) scratch[j];
+					}
+				}
+			}
+		}
+		if (rcm) {
+			for (int i = 0, j = n - 1; i < j; i++, j--) {
+				int swap = order[i];
+				order[i] = order[j];
+				order[j] = swap;
 			}
 		}
+		return order;
+	}
 	
+	/**
+	 * Gives every vertex a new index, moving its edges to match. Each vertex
+	 * keeps its edges in the same order.
+	 * 
+	 * @param order
+	 *            the current index of the vertex to number 0, 1, ... in turn
+	 */
+	private void renumber(int[] order) {
+		int n = order.length;
+		int[] newIndex = new int[n];
+		Vertex[] newVertexArray = new Vertex[n];
+		for (int i = 0; i < n; i++) {
+			newIndex[order[i]] = i;
+			newVertexArray[i] = vertexArray[order[i]];
+			vertexIndex.put(newVertexArray[i], i);
+		}
+		vertexArray = newVertexArray;
+		
+		int[] newOutStart = new int[n + 1];
+		int[] newOutTargets = new int[outTargets.length];
+		int[] newOutWeights = new int[outWeights.length];
+		moveEdges(order, newIndex, outStart, outTargets, outWeights, newOutStart, newOutTargets, newOutWeights);
+		outStart = newOutStart;
+		outTargets = newOutTargets;
+		outWeights = newOutWeights;
+		
+		int[] newInStart = new int[n + 1];
+		int[] newInSources = new int[inSources.length];
+		int[] newInWeights = new int[inWeights.length];
+		moveEdges(order, newIndex, inStart, inSources, inWeights, newInStart, newInSources, newInWeights);
+		inStart = newInStart;
+		inSources = newInSources;
+		inWeights = newInWeights;
 	}
 	
 	/**
-	 * Returns the vertex from the given vertex list that has the shortest distance
+	 * Copies edges grouped by vertex into new arrays grouped by the vertices'
+	 * new indices, renumbering the far end of every edge
+	 */
+	private static void moveEdges(int[] order, int[] newIndex, int[] start, int[] ends, int[] weights,
+			int[] newStart, int[] newEnds, int[] newWeights) {
+		int next = 0;
+		for (int i = 0; i < order.length; i++) {
+			newStart[i] = next;
+			for (int j = start[order[i]]; j < start[order[i] + 1]; j++) {
+				newEnds[next] = newIndex[ends[j]];
+				newWeights[next] = weights[j];
+				next++;
+			}
+		}
+		newStart[order.length] = next;
+	}
+	
+	/**
+	 * Finds the internal index of a vertex, which depends on the graph's
+	 * VertexOrdering
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the vertex does not exist.
+	 */
+	int indexOf(Vertex v) {
+		Integer index = vertexIndex.get(v);
+		if (index == null) {
+			throw new IllegalArgumentException();
+		}
+		return index;
+	}
+	
+	/**
+	 * Splits 0 ... size - 1 into the given number of contiguous ranges and
+	 * runs the task on each, in parallel on the pool when there is one. Waits
+	 * for every range to finish and rethrows the first failure.
 	 * 
-	 * @param vList
-	 *            A list of vertices to check for a minimum distance
-	 * @return v
-	 * 			  a vertex that is the minimum distance away from the current vertex
+	 * @param pool
+	 *            the threads to run on, or null to run on this thread
+	 * @param size
+	 *            the number of items to split
+	 * @param parts
+	 *            the number of ranges to split them into
+	 * @param task
+	 *            the work to do on each range
 	 */
-	private Vertex smallestDist (Collection<Vertex> vList) {
-    	int min = Integer.MAX_VALUE;
-		Vertex v = null;
-    	for(Vertex curVertex: vList) {
-			if (curVertex.getDistance() < min) {
-				min = curVertex.getDistance();
-				v = curVertex;
+	private static void forEachRange(ExecutorService pool, int size, int parts, final RangeTask task) {
+		// Run everything here when there is nothing to split
+		if (pool == null || parts == 1) {
+			task.run(0, 0, size);
+			return;
+		}
+		
+		List<Future<?>> results = new ArrayList<Future<?>>();
+		for (int part = 0; part < parts; part++) {
+			final int index = part;
+			final int from = (int) ((long) size * part / parts);
+			final int to = (int) ((long) size * (part + 1) / parts);
+			results.add(pool.submit(new Runnable() {
+				public void run() {
+					task.run(index, from, to);
+				}
+			}));
+		}
+		try {
+			for (Future<?> result : results) {
+				result.get();
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
 		}
-    	return v;
 	}
 	
 	/**
-	 * Reset all vertex fields for the next runthrough
+	 * Ways of relaxing the edges out of a vertex during a search
 	 */
-	private void resetVertices() {
-		for (Vertex curVertex : vertices) {
-			curVertex.setCost(Integer.MAX_VALUE);
-			curVertex.setDistance(Integer.MAX_VALUE);
-			curVertex.setKnown(false);
-			curVertex.setPath(null);
+	public enum RelaxationMode {
+		// One edge at a time, the default
+		SCALAR,
+		
+		// With SIMD instructions on vertices with many edges, see
+		// VectorRelaxKernel; searches fall back to SCALAR when it is missing
+		VECTOR;
+		
+		/**
+		 * Test whether searches can use this mode, rather than falling back
+		 * to SCALAR
+		 */
+		public boolean isAvailable() {
+			return this == SCALAR || VECTOR_KERNEL != null;
 		}
 	}
 	
+	/**
+	 * Ways of numbering the vertices internally. Searches keep their data in
+	 * arrays indexed by vertex, so a numbering that gives neighbors nearby
+	 * indices makes a search touch fewer cache lines.
+	 */
+	public enum VertexOrdering {
+		// The order the vertices were given in, the default
+		FILE,
+		
+		// Breadth first from the first vertex of each component
+		BFS,
+		
+		// Reverse Cuthill-McKee, which keeps the index gap across every edge
+		// small and suits road networks and meshes
+		RCM,
+		
+		// By decreasing degree, which packs the busiest vertices together and
+		// suits graphs with a few hubs
+		HUB
+	}
+	
+	/**
+	 * A piece of work done over one range of items by forEachRange
+	 */
+	private interface RangeTask {
+		/**
+		 * Do the work for items from (inclusive) to to (exclusive)
+		 * 
+		 * @param part
+		 *            which of the ranges this is, starting at 0
+		 */
+		void run(int part, int from, int to);
+	}
+	
 	/**
 	 * Thrown when an input collection of edges has a problem
 	 */
@@ -0,0 +1,46 @@
+/**
+ * Finds which of a run of edges out of one vertex may improve the distance
+ * of the vertex at their far end. The arrays are those of a SearchWorkspace,
+ * which updates the vertices the kernel picks out.
+ *
+ * The SIMD implementation, VectorRelaxKernel, lives in the separate src-vector
+ * source root because it needs the jdk.incubator.vector module of JDK 16 or
+ * later. MyGraph loads it by name when it is on the class path and the module
+ * is enabled, and relaxes one edge at a time otherwise.
+ */
+interface RelaxKernel {
+	/**
+	 * Find the edges whose candidate distance, base plus the edge weight, is
+	 * within the budget and below the current distance of their far end. A
+	 * vertex's distance only counts when its stamp holds the current epoch.
+	 * Settled vertices need no separate check: their distance is at most base
+	 * and weights are never negative, so no candidate improves on it.
+	 * An edge picked out may still lose to an earlier edge in the same run to
+	 * the same vertex, so the caller checks each one again.
+	 *
+	 * @param base
+	 *            the distance of the vertex the edges leave
+	 * @param ends
+	 *            the vertex at the far end of each edge
+	 * @param weights
+	 *            the weight of each edge
+	 * @param from
+	 *            the first edge to check
+	 * @param to
+	 *            one past the last edge to check
+	 * @param maxCost
+	 *            candidates above this are ignored
+	 * @param stamp
+	 *            the epoch each vertex's distance was set in
+	 * @param distance
+	 *            the best distance found to each vertex
+	 * @param epoch
+	 *            the number of the current search
+	 * @param picked
+	 *            filled with the indices of the edges picked out, in order;
+	 *            must have room for to - from entries
+	 * @return the number of edges picked out
+	 */
+	int pick(int base, int[] ends, int[] weights, int from, int to, int maxCost, int[] stamp, int[] distance,
+			int epoch, int[] picked);
+}
@@ -0,0 +1,85 @@
+import java.util.*;
+
+/**
+ * Benchmark comparing the SCALAR and VECTOR relaxation modes of MyGraph on
+ * graphs whose vertices all have the same out-degree, for a range of degrees.
+ * Every graph has about the same number of edges, so the bands differ only in
+ * how those edges are spread over the vertices, except that a graph always has
+ * more vertices than its degree. Checks that both modes find the same path
+ * costs.
+ *
+ * VECTOR needs src-vector compiled in and the incubator module enabled, see
+ * VectorRelaxKernel.
+ *
+ * USAGE: java --add-modules jdk.incubator.vector RelaxationBenchmark [edges] [queries] [degree ...]
+ */
+
+public class RelaxationBenchmark {
+	public static void main(String[] args) {
+		int m = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+		int queries = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		int[] degrees = { 4, 16, 64, 256, 1024, 4096 };
+		if (args.length > 2) {
+			degrees = new int[args.length - 2];
+			for (int i = 2; i < args.length; i++) {
+				degrees[i - 2] = Integer.parseInt(args[i]);
+			}
+		}
+
+		if (!MyGraph.RelaxationMode.VECTOR.isAvailable()) {
+			System.err.println("VECTOR relaxation is not available: compile src-vector and run with"
+					+ " --add-modules jdk.incubator.vector");
+			System.exit(2);
+		}
+
+		System.out.println("degree   vertices   scalar ms/q   vector ms/q  speedup");
+		for (int degree : degrees) {
+			int n = Math.max(degree + 1, m / degree);
+			Random random = new Random(373);
+
+			// Build the graph, giving each vertex distinct random neighbors
+			List<Vertex> v = new ArrayList<Vertex>(n);
+			for (int i = 0; i < n; i++) {
+				v.add(new Vertex("v" + i));
+			}
+			List<Edge> e = new ArrayList<Edge>(n * degree);
+			for (int i = 0; i < n; i++) {
+				int first = random.nextInt(n);
+				for (int j = 0; j < degree; j++) {
+					int to = (first + j * (n / degree)) % n;
+					e.add(new Edge(v.get(i), v.get(to), 1 + random.nextInt(1000)));
+				}
+			}
+			MyGraph g = new MyGraph(v, e);
+			e = null;
+
+			Vertex[] from = new Vertex[queries];
+			Vertex[] to = new Vertex[queries];
+			for (int i = 0; i < queries; i++) {
+				from[i] = v.get(random.nextInt(n));
+				to[i] = v.get(random.nextInt(n));
+			}
+
+			// Time each mode after a warmup run, checking that they agree
+			long[] times = new long[2];
+			int[][] costs = new int[2][queries];
+			MyGraph.RelaxationMode[] modes = { MyGraph.RelaxationMode.SCALAR, MyGraph.RelaxationMode.VECTOR };
+			for (int round = 0; round < 2; round++) {
+				for (int k = 0; k < modes.length; k++) {
+					g.setRelaxationMode(modes[k]);
+					long begin = System.nanoTime();
+					for (int i = 0; i < queries; i++) {
+						costs[k][i] = g.shortestPathCost(from[i], to[i]);
+					}
+					times[k] = System.nanoTime() - begin;
+				}
+			}
+			if (!Arrays.equals(costs[0], costs[1])) {
+				System.err.println("COST MISMATCH at degree " + degree);
+				System.exit(1);
+			}
+			System.out.printf("%6d %10d %13.3f %13.3f %8.2fx%n", degree, n, times[0] / 1e6 / queries,
+					times[1] / 1e6 / queries, (double) times[0] / times[1]);
+		}
+	}
+}
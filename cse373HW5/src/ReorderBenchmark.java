@@ -0,0 +1,148 @@
+import java.util.*;
+
+/**
+ * Benchmark comparing the vertex orderings of MyGraph. For each ordering it
+ * reports the time to build the graph, the time per shortest path query and
+ * how close together the endpoints of each edge are numbered, and checks that
+ * every ordering finds the same path costs.
+ *
+ * Without files, the graph is a grid of two-way streets whose vertices are
+ * listed in random order, as road network exports often are. With files, the
+ * graph is read as by FindPaths.
+ *
+ * Java cannot read the processor's cache miss counters, so the benchmark
+ * reports two stand-ins: the mean index gap across an edge, and the share of
+ * edges whose endpoints' search data falls on different 4 KB memory pages.
+ * For real counts, run one ordering at a time under a profiler, e.g.
+ *     perf stat -e cache-misses,cache-references java ReorderBenchmark 100 700 RCM
+ *
+ * USAGE: java ReorderBenchmark [queries] [side | vertexFile edgeFile] [ordering ...]
+ */
+
+public class ReorderBenchmark {
+	// Entries of an int array that share one 4 KB memory page
+	private static final int PAGE = 1024;
+
+	public static void main(String[] args) {
+		int queries = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		int next = 1;
+
+		// Read or generate the graph
+		List<Vertex> v;
+		List<Edge> e;
+		if (args.length > 2 && !args[1].matches("\\d+") && !isOrdering(args[1])) {
+			MyGraph read = FindPaths.readGraph(args[1], args[2]);
+			v = new ArrayList<Vertex>(read.vertices());
+			e = new ArrayList<Edge>(read.edges());
+			next = 3;
+		} else {
+			int side = 700;
+			if (args.length > 1 && args[1].matches("\\d+")) {
+				side = Integer.parseInt(args[1]);
+				next = 2;
+			}
+			v = new ArrayList<Vertex>();
+			e = new ArrayList<Edge>();
+			shuffledGrid(side, new Random(373), v, e);
+		}
+
+		MyGraph.VertexOrdering[] orderings = MyGraph.VertexOrdering.values();
+		if (args.length > next) {
+			orderings = new MyGraph.VertexOrdering[args.length - next];
+			for (int i = next; i < args.length; i++) {
+				orderings[i - next] = MyGraph.VertexOrdering.valueOf(args[i]);
+			}
+		}
+
+		Random random = new Random(374);
+		Vertex[] from = new Vertex[queries];
+		Vertex[] to = new Vertex[queries];
+		for (int i = 0; i < queries; i++) {
+			from[i] = v.get(random.nextInt(v.size()));
+			to[i] = v.get(random.nextInt(v.size()));
+		}
+
+		System.out.printf("%d vertices, %d edges, %d queries%n", v.size(), e.size(), queries);
+		System.out.println("ordering   build ms   mean gap  split pages    ms/query  speedup");
+		int[] firstCosts = null;
+		double firstTime = 0;
+		for (MyGraph.VertexOrdering ordering : orderings) {
+			long begin = System.nanoTime();
+			MyGraph g = new MyGraph(v, e, Runtime.getRuntime().availableProcessors(), ordering);
+			double buildTime = (System.nanoTime() - begin) / 1e6;
+
+			// Measure how far apart the endpoints of each edge are numbered
+			double gap = 0;
+			long split = 0;
+			for (Edge edge : e) {
+				int a = g.indexOf(edge.getSource());
+				int b = g.indexOf(edge.getDestination());
+				gap += Math.abs(a - b);
+				if (a / PAGE != b / PAGE) {
+					split++;
+				}
+			}
+
+			// Time the queries after a warmup run
+			int[] costs = new int[queries];
+			long time = 0;
+			for (int round = 0; round < 2; round++) {
+				begin = System.nanoTime();
+				for (int i = 0; i < queries; i++) {
+					costs[i] = g.shortestPathCost(from[i], to[i]);
+				}
+				time = System.nanoTime() - begin;
+			}
+			if (firstCosts == null) {
+				firstCosts = costs;
+				firstTime = time;
+			} else if (!Arrays.equals(firstCosts, costs)) {
+				System.err.println("COST MISMATCH with " + ordering);
+				System.exit(1);
+			}
+			System.out.printf("%-8s %10.1f %10.1f %11.1f%% %11.3f %7.2fx%n", ordering, buildTime,
+					gap / Math.max(1, e.size()), 100.0 * split / Math.max(1, e.size()),
+					time / 1e6 / queries, firstTime / time);
+			g = null;
+		}
+	}
+
+	/**
+	 * Test whether a word names a vertex ordering
+	 */
+	private static boolean isOrdering(String word) {
+		for (MyGraph.VertexOrdering ordering : MyGraph.VertexOrdering.values()) {
+			if (ordering.name().equals(word)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Fills v and e with a side by side grid whose neighboring vertices are
+	 * joined both ways at the same random weight, listing the vertices in
+	 * random order
+	 */
+	private static void shuffledGrid(int side, Random random, List<Vertex> v, List<Edge> e) {
+		Vertex[] grid = new Vertex[side * side];
+		for (int i = 0; i < grid.length; i++) {
+			grid[i] = new Vertex("r" + (i / side) + "c" + (i % side));
+		}
+		for (int i = 0; i < grid.length; i++) {
+			if (i % side + 1 < side) {
+				int weight = 1 + random.nextInt(100);
+				e.add(new Edge(grid[i], grid[i + 1], weight));
+				e.add(new Edge(grid[i + 1], grid[i], weight));
+			}
+			if (i + side < grid.length) {
+				int weight = 1 + random.nextInt(100);
+				e.add(new Edge(grid[i], grid[i + side], weight));
+				e.add(new Edge(grid[i + side], grid[i], weight));
+			}
+		}
+		List<Vertex> shuffled = new ArrayList<Vertex>(Arrays.asList(grid));
+		Collections.shuffle(shuffled, random);
+		v.addAll(shuffled);
+	}
+}
@@ -0,0 +1,198 @@
+import java.util.Arrays;
+
+/**
+ * Reusable scratch space for one shortest path search at a time over a graph
+ * whose vertices are numbered 0 ... n - 1. Each thread keeps its own
+ * workspace and reuses it for every query.
+ *
+ * Instead of clearing the arrays between searches, every search gets a new
+ * epoch number, and an entry only counts if it was stamped with the current
+ * epoch. Starting a search is therefore constant time, and a search only
+ * touches the entries of the vertices it reaches.
+ */
+class SearchWorkspace {
+	// Best distance found and the vertex it was reached from, valid only
+	// when stamp holds the current epoch
+	private final int[] distance;
+	private final int[] previous;
+	private final int[] stamp;
+
+	// Epoch at which each vertex was settled or marked as a target
+	private final int[] settled;
+	private final int[] target;
+
+	// Settled vertices in the order they were settled
+	private final int[] order;
+	private int settledCount;
+
+	// Number of the current search
+	private int epoch;
+
+	// Frontier of the current search
+	private final DistanceHeap heap;
+
+	// Edges picked out by a RelaxKernel in relaxPicked, grown as needed
+	private int[] picked = new int[64];
+
+	/**
+	 * Construct a new workspace
+	 *
+	 * @param n
+	 *            the number of vertices in the graph
+	 */
+	public SearchWorkspace(int n) {
+		distance = new int[n];
+		previous = new int[n];
+		stamp = new int[n];
+		settled = new int[n];
+		target = new int[n];
+		order = new int[n];
+		heap = new DistanceHeap(64);
+		epoch = 0;
+	}
+
+	/**
+	 * Forget the previous search and start a new one
+	 */
+	public void begin() {
+		// Only when the epoch counter runs out do the stamps need clearing
+		if (epoch == Integer.MAX_VALUE) {
+			Arrays.fill(stamp, 0);
+			Arrays.fill(settled, 0);
+			Arrays.fill(target, 0);
+			epoch = 0;
+		}
+		epoch++;
+		settledCount = 0;
+		heap.clear();
+	}
+
+	/**
+	 * Get the frontier of the current search, ordered by distance
+	 */
+	public DistanceHeap heap() {
+		return heap;
+	}
+
+	/**
+	 * Get the best distance found to a vertex in this search
+	 *
+	 * @return the distance, or Integer.MAX_VALUE if it has not been reached
+	 */
+	public int distance(int v) {
+		return (stamp[v] == epoch) ? distance[v] : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Get the vertex a vertex was reached from in this search
+	 *
+	 * @return the previous vertex, or -1 for the start or an unreached vertex
+	 */
+	public int previous(int v) {
+		return (stamp[v] == epoch) ? previous[v] : -1;
+	}
+
+	/**
+	 * Record a better distance to a vertex and queue it
+	 *
+	 * @param v
+	 *            the vertex reached
+	 * @param newDistance
+	 *            the distance it was reached at
+	 * @param from
+	 *            the vertex it was reached from, or -1 for the start
+	 */
+	public void reach(int v, int newDistance, int from) {
+		stamp[v] = epoch;
+		distance[v] = newDistance;
+		previous[v] = from;
+		heap.add(v, newDistance);
+	}
+
+	/**
+	 * Relax a run of edges out of v, letting a kernel pick out the edges that
+	 * may improve their far end before updating those one at a time
+	 *
+	 * @param kernel
+	 *            the kernel that checks the edges
+	 * @param v
+	 *            the vertex whose edges are relaxed
+	 * @param base
+	 *            v's final distance
+	 * @param ends
+	 *            the vertex at the far end of each edge
+	 * @param weights
+	 *            the weight of each edge
+	 * @param from
+	 *            the first edge to relax
+	 * @param to
+	 *            one past the last edge to relax
+	 * @param maxCost
+	 *            candidates above this are ignored
+	 */
+	public void relaxPicked(RelaxKernel kernel, int v, int base, int[] ends, int[] weights, int from, int to,
+			int maxCost) {
+		if (picked.length < to - from) {
+			picked = new int[Math.max(to - from, picked.length * 2)];
+		}
+		int count = kernel.pick(base, ends, weights, from, to, maxCost, stamp, distance, epoch, picked);
+		
+		// Check each one again in case an earlier edge went to the same vertex
+		for (int k = 0; k < count; k++) {
+			int i = picked[k];
+			int candidate = base + weights[i];
+			if (candidate < distance(ends[i])) {
+				reach(ends[i], candidate, v);
+			}
+		}
+	}
+
+	/**
+	 * Test whether a vertex's distance is final in this search
+	 */
+	public boolean isSettled(int v) {
+		return settled[v] == epoch;
+	}
+
+	/**
+	 * Mark a vertex's distance as final
+	 */
+	public void settle(int v) {
+		settled[v] = epoch;
+		order[settledCount++] = v;
+	}
+
+	/**
+	 * Mark a vertex as one the search is looking for
+	 *
+	 * @return false if it was already marked in this search
+	 */
+	public boolean markTarget(int v) {
+		if (target[v] == epoch) {
+			return false;
+		}
+		target[v] = epoch;
+		return true;
+	}
+
+	/**
+	 * Test whether a vertex was marked as a target in this search
+	 */
+	public boolean isTarget(int v) {
+		return target[v] == epoch;
+	}
+
+	/**
+	 * Get the number of vertices settled so far in this search
+	 */
+	public int settledCount() {
+		return settledCount;
+	}
+
+	/**
+	 * Get the i-th vertex settled in this search
+	 */
+	public int settledVertex(int i) {
+		return order[i];
+	}
+}
@@ -0,0 +1,262 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Testing program for AsyncPathFinder. Checks that:
+ *
+ * Shutting down while other threads are still submitting leaves no future
+ * waiting forever, with the path finder's own executor and with one passed in.
+ * A group of queries from one vertex that names an unknown vertex fails only
+ * the query that named it.
+ * Every listener is told exactly once, even when it throws, and a throwing
+ * listener is reported without stopping the rest of its group.
+ * Every answer costs the same as MyGraph.shortestPathCost.
+ *
+ * USAGE: java TestAsyncPathFinder [rounds] [vertices]
+ */
+
+public class TestAsyncPathFinder {
+	// How long a future may take before it counts as left waiting
+	private static final long TIMEOUT_SECONDS = 10;
+
+	// Number of problems found so far
+	private static int failures = 0;
+
+	// Exceptions thrown by listeners and reported as uncaught
+	private static AtomicInteger reported = new AtomicInteger();
+
+	public static void main(String[] args) throws Exception {
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		int n = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+		// Count what listeners throw rather than print it
+		Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+			public void uncaughtException(Thread thread, Throwable e) {
+				reported.incrementAndGet();
+			}
+		});
+
+		MyGraph g = randomGraph(n, new Random(373));
+		List<Vertex> v = new ArrayList<Vertex>(g.vertices());
+		testUnknownVertex(g, v);
+		testListeners(g, v);
+		for (int round = 0; round < rounds; round++) {
+			testShutdownWhileSubmitting(g, v, round);
+		}
+
+		if (failures > 0) {
+			System.out.println(failures + " problems found");
+			System.exit(1);
+		}
+		System.out.println("All checks passed, Good!");
+	}
+
+	/**
+	 * Queues queries from one vertex, one of them to a vertex that does not
+	 * exist, so they are grouped into one search
+	 */
+	private static void testUnknownVertex(MyGraph g, List<Vertex> v) throws Exception {
+		AsyncPathFinder finder = new AsyncPathFinder(g, 200, 100);
+		Vertex from = v.get(0);
+		List<Vertex> targets = new ArrayList<Vertex>(v.subList(1, 6));
+		targets.add(2, new Vertex("no such vertex"));
+		List<Future<Path>> futures = new ArrayList<Future<Path>>();
+		for (Vertex to : targets) {
+			futures.add(finder.shortestPathAsync(from, to));
+		}
+		finder.shutdown();
+
+		for (int i = 0; i < targets.size(); i++) {
+			if (i == 2) {
+				try {
+					futures.get(i).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+					fail("unknown vertex", "query to an unknown vertex succeeded");
+				} catch (ExecutionException e) {
+					if (!(e.getCause() instanceof IllegalArgumentException)) {
+						fail("unknown vertex", "failed with " + e.getCause());
+					}
+				}
+			} else {
+				checkCost("unknown vertex", g, from, targets.get(i), futures.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Queues queries with listeners, some of which throw
+	 */
+	private static void testListeners(MyGraph g, List<Vertex> v) throws Exception {
+		AsyncPathFinder finder = new AsyncPathFinder(g, 50, 20);
+		Random random = new Random(1);
+		int count = 200;
+		final AtomicInteger[] calls = new AtomicInteger[count];
+		List<Future<Path>> futures = new ArrayList<Future<Path>>();
+		List<Vertex[]> pairs = new ArrayList<Vertex[]>();
+		int throwing = 0;
+		reported.set(0);
+		for (int i = 0; i < count; i++) {
+			calls[i] = new AtomicInteger();
+			final AtomicInteger called = calls[i];
+
+			// Every fifth listener throws, every seventh query names an
+			// unknown vertex
+			final boolean throwsToo = (i % 5 == 0);
+			if (throwsToo) {
+				throwing++;
+			}
+			Vertex from = v.get(random.nextInt(10));
+			Vertex to = (i % 7 == 0) ? new Vertex("missing" + i) : v.get(random.nextInt(v.size()));
+			pairs.add(new Vertex[] { from, to });
+			futures.add(finder.shortestPathAsync(from, to, new AsyncPathFinder.PathListener() {
+				public void pathFound(Path path) {
+					called.incrementAndGet();
+					if (throwsToo) {
+						throw new IllegalStateException("listener failure");
+					}
+				}
+
+				public void pathFailed(Throwable failure) {
+					called.incrementAndGet();
+					if (throwsToo) {
+						throw new IllegalStateException("listener failure");
+					}
+				}
+			}));
+		}
+		finder.shutdown();
+
+		for (int i = 0; i < count; i++) {
+			Vertex[] pair = pairs.get(i);
+			if (pair[1].getLabel().startsWith("missing")) {
+				try {
+					futures.get(i).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+					fail("listeners", "query to an unknown vertex succeeded");
+				} catch (ExecutionException expected) {
+					// Good, the listener was told through pathFailed
+				}
+			} else {
+				checkCost("listeners", g, pair[0], pair[1], futures.get(i));
+			}
+			if (calls[i].get() != 1) {
+				fail("listeners", "listener " + i + " was told " + calls[i].get() + " times");
+			}
+		}
+		if (reported.get() != throwing) {
+			fail("listeners", reported.get() + " listener failures reported, expected " + throwing);
+		}
+	}
+
+	/**
+	 * Shuts a path finder down while three threads are still submitting, then
+	 * checks every query that was accepted
+	 */
+	private static void testShutdownWhileSubmitting(final MyGraph g, final List<Vertex> v, int round)
+			throws Exception {
+		// Alternate between the path finder's own executor and one passed in
+		ExecutorService pool = (round % 2 == 0) ? null : Executors.newFixedThreadPool(3);
+		final AsyncPathFinder finder = new AsyncPathFinder(g, 1, 16, pool);
+		final List<Future<Path>> futures = new ArrayList<Future<Path>>();
+		final List<Vertex[]> pairs = new ArrayList<Vertex[]>();
+		final AtomicInteger told = new AtomicInteger();
+
+		Thread[] submitters = new Thread[3];
+		for (int t = 0; t < submitters.length; t++) {
+			final Random random = new Random(round * 10 + t);
+			submitters[t] = new Thread() {
+				public void run() {
+					try {
+						for (int k = 0; k < 200; k++) {
+							Vertex from = v.get(random.nextInt(50));
+							Vertex to = v.get(random.nextInt(v.size()));
+							Future<Path> future = finder.shortestPathAsync(from, to,
+									new AsyncPathFinder.PathListener() {
+										public void pathFound(Path path) {
+											told.incrementAndGet();
+										}
+
+										public void pathFailed(Throwable failure) {
+											told.incrementAndGet();
+										}
+									});
+							synchronized (futures) {
+								futures.add(future);
+								pairs.add(new Vertex[] { from, to });
+							}
+						}
+					} catch (IllegalStateException e) {
+						// Shut down, stop submitting
+					}
+				}
+			};
+			submitters[t].start();
+		}
+
+		Thread.sleep(round % 5);
+		finder.shutdown();
+		for (Thread submitter : submitters) {
+			submitter.join();
+		}
+
+		String name = "shutdown round " + round;
+		for (int i = 0; i < futures.size(); i++) {
+			checkCost(name, g, pairs.get(i)[0], pairs.get(i)[1], futures.get(i));
+		}
+		if (pool != null) {
+			pool.shutdown();
+			pool.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		}
+		if (told.get() != futures.size()) {
+			fail(name, told.get() + " listeners told for " + futures.size() + " queries");
+		}
+	}
+
+	/**
+	 * Checks that a future completes with a path of the cost MyGraph gives
+	 */
+	private static void checkCost(String name, MyGraph g, Vertex from, Vertex to, Future<Path> future)
+			throws InterruptedException {
+		Path path;
+		try {
+			path = future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		} catch (TimeoutException e) {
+			fail(name, from + " to " + to + " was never answered");
+			return;
+		} catch (ExecutionException e) {
+			fail(name, from + " to " + to + " failed with " + e.getCause());
+			return;
+		}
+		int expected = g.shortestPathCost(from, to);
+		int actual = (path == null) ? -1 : path.cost;
+		if (actual != expected) {
+			fail(name, from + " to " + to + " cost " + actual + ", expected " + expected);
+		}
+	}
+
+	/**
+	 * Reports a problem
+	 */
+	private static void fail(String name, String problem) {
+		failures++;
+		System.out.println("FAILED " + name + ": " + problem);
+	}
+
+	/**
+	 * Builds a random graph where every vertex has four edges. A pair of
+	 * vertices always gets the same weight so edges never conflict.
+	 */
+	private static MyGraph randomGraph(int n, Random random) {
+		List<Vertex> v = new ArrayList<Vertex>(n);
+		for (int i = 0; i < n; i++) {
+			v.add(new Vertex("v" + i));
+		}
+		List<Edge> e = new ArrayList<Edge>(n * 4);
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < 4; j++) {
+				int to = random.nextInt(n);
+				e.add(new Edge(v.get(i), v.get(to), (i * 7 + to) % 50));
+			}
+		}
+		return new MyGraph(v, e);
+	}
+}
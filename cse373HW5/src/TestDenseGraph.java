@@ -0,0 +1,229 @@
+import java.util.*;
+
+/**
+ * Testing program for DenseGraph. Builds random graphs and compares the cost
+ * of the path between every pair of vertices with MyGraph, and checks that
+ * every path returned adds up to its cost.
+ *
+ * Each graph is checked three ways: built on one thread, built on several,
+ * and built by several threads all asking for their first path at once. The
+ * sizes are mostly not multiples of the tile size, so the partial tiles at
+ * the edges of the matrix are covered too.
+ *
+ * USAGE: java TestDenseGraph [seeds] [threads]
+ */
+
+public class TestDenseGraph {
+	// Graph sizes to test, around and between multiples of the 64 vertex tile
+	private static final int[] SIZES = { 1, 2, 63, 64, 65, 130, 300 };
+
+	// Number of problems found so far
+	private static int failures = 0;
+
+	// Number of vertices in the graph being tested, for packing edge keys
+	private static int vertexCount;
+
+	public static void main(String[] args) throws InterruptedException {
+		int seeds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+		int threads = args.length > 1 ? Integer.parseInt(args[1])
+				: Math.max(4, Runtime.getRuntime().availableProcessors());
+
+		for (int seed = 0; seed < seeds; seed++) {
+			for (int n : SIZES) {
+				testGraph(new Random(seed * 1000 + n), n, threads);
+			}
+		}
+
+		if (failures > 0) {
+			System.out.println(failures + " problems found");
+			System.exit(1);
+		}
+		System.out.println("All checks passed, Good!");
+	}
+
+	/**
+	 * Builds one random graph and checks it built each way
+	 */
+	private static void testGraph(Random random, int n, int threads) throws InterruptedException {
+		// Sparse among the first third of the vertices, dense among the
+		// rest, with some zero weights
+		Vertex[] v = vertices(n);
+		Map<Long, Integer> edges = new HashMap<Long, Integer>();
+		for (int from = 0; from < n; from++) {
+			for (int to = 0; to < n; to++) {
+				if (random.nextInt(from < n / 3 ? 50 : 4) == 0) {
+					edges.put(key(from, to), random.nextInt(30));
+				}
+			}
+		}
+		MyGraph fresh = graph(v, edges);
+		Path[] expected = new Path[n * n];
+		for (int pair = 0; pair < n * n; pair++) {
+			expected[pair] = fresh.shortestPath(v[pair / n], v[pair % n]);
+		}
+		String name = n + " vertices";
+
+		DenseGraph single = dense(v, edges);
+		single.precompute(1);
+		check(name + ", 1 thread", single, expected, v, edges);
+
+		DenseGraph parallel = dense(v, edges);
+		parallel.precompute(threads);
+		check(name + ", " + threads + " threads", parallel, expected, v, edges);
+
+		checkFirstQueries(name + ", first queries", dense(v, edges), expected, v, edges, threads);
+	}
+
+	/**
+	 * Has several threads ask for every path at once on a graph that is not
+	 * built yet, each starting from a different pair, then checks what each
+	 * got
+	 */
+	private static void checkFirstQueries(String name, final DenseGraph dense, Path[] expected, final Vertex[] v,
+			Map<Long, Integer> edges, int threads) throws InterruptedException {
+		final int n = v.length;
+		final Path[][] found = new Path[threads][n * n];
+		final RuntimeException[] thrown = new RuntimeException[threads];
+		Thread[] askers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final int asker = t;
+			askers[t] = new Thread() {
+				public void run() {
+					try {
+						int start = asker * n * n / found.length;
+						for (int k = 0; k < n * n; k++) {
+							int pair = (start + k) % (n * n);
+							found[asker][pair] = dense.shortestPath(v[pair / n], v[pair % n]);
+						}
+					} catch (RuntimeException e) {
+						thrown[asker] = e;
+					}
+				}
+			};
+		}
+		for (Thread asker : askers) {
+			asker.start();
+		}
+		for (Thread asker : askers) {
+			asker.join();
+		}
+
+		for (int t = 0; t < threads; t++) {
+			if (thrown[t] != null) {
+				fail(name, "thread " + t + " threw " + thrown[t]);
+				continue;
+			}
+			for (int pair = 0; pair < n * n; pair++) {
+				compare(name, found[t][pair], expected[pair], pair / n, pair % n, v, edges);
+			}
+		}
+	}
+
+	/**
+	 * Compares the path between every pair of vertices with what MyGraph
+	 * found, at expected[from * n + to]
+	 */
+	private static void check(String name, DenseGraph dense, Path[] expected, Vertex[] v,
+			Map<Long, Integer> edges) {
+		for (int from = 0; from < v.length; from++) {
+			for (int to = 0; to < v.length; to++) {
+				Path actual;
+				try {
+					actual = dense.shortestPath(v[from], v[to]);
+				} catch (RuntimeException e) {
+					fail(name, v[from] + " to " + v[to] + " threw " + e);
+					continue;
+				}
+				compare(name, actual, expected[from * v.length + to], from, to, v, edges);
+			}
+		}
+	}
+
+	/**
+	 * Compares one path with the one MyGraph found
+	 */
+	private static void compare(String name, Path actual, Path expected, int from, int to, Vertex[] v,
+			Map<Long, Integer> edges) {
+		if ((expected == null) != (actual == null)) {
+			fail(name, v[from] + " to " + v[to] + " reachable: expected " + (expected != null));
+		} else if (actual != null && actual.cost != expected.cost) {
+			fail(name, v[from] + " to " + v[to] + " cost " + actual.cost + ", expected " + expected.cost);
+		} else if (actual != null && from != to && sum(actual, from, edges) != actual.cost) {
+			fail(name, v[from] + " to " + v[to] + " path does not add up to its cost");
+		}
+	}
+
+	/**
+	 * Adds up the edges of a path, which runs from its end back to origin,
+	 * or returns -1 if it uses an edge that does not exist
+	 */
+	private static int sum(Path path, int origin, Map<Long, Integer> edges) {
+		int total = 0;
+		int previous = origin;
+		List<Vertex> list = new ArrayList<Vertex>(path.vertices);
+		for (int i = list.size() - 1; i >= 0; i--) {
+			int next = Integer.parseInt(list.get(i).getLabel());
+			Integer weight = edges.get(key(previous, next));
+			if (weight == null) {
+				return -1;
+			}
+			total += weight;
+			previous = next;
+		}
+		return total;
+	}
+
+	/**
+	 * Reports a problem
+	 */
+	private static void fail(String name, String problem) {
+		failures++;
+		System.out.println("FAILED " + name + ": " + problem);
+	}
+
+	/**
+	 * Makes vertices labeled 0 ... n - 1
+	 */
+	private static Vertex[] vertices(int n) {
+		vertexCount = n;
+		Vertex[] v = new Vertex[n];
+		for (int i = 0; i < n; i++) {
+			v[i] = new Vertex("" + i);
+		}
+		return v;
+	}
+
+	/**
+	 * Packs an edge into one key
+	 */
+	private static long key(int from, int to) {
+		return (long) from * vertexCount + to;
+	}
+
+	/**
+	 * Lists the given edges
+	 */
+	private static List<Edge> edgeList(Vertex[] v, Map<Long, Integer> edges) {
+		List<Edge> e = new ArrayList<Edge>();
+		for (Map.Entry<Long, Integer> edge : edges.entrySet()) {
+			int from = (int) (edge.getKey() / v.length);
+			int to = (int) (edge.getKey() % v.length);
+			e.add(new Edge(v[from], v[to], edge.getValue()));
+		}
+		return e;
+	}
+
+	/**
+	 * Builds a MyGraph with the given edges
+	 */
+	private static MyGraph graph(Vertex[] v, Map<Long, Integer> edges) {
+		return new MyGraph(Arrays.asList(v), edgeList(v, edges));
+	}
+
+	/**
+	 * Builds a DenseGraph with the given edges
+	 */
+	private static DenseGraph dense(Vertex[] v, Map<Long, Integer> edges) {
+		return new DenseGraph(Arrays.asList(v), edgeList(v, edges));
+	}
+}
@@ -0,0 +1,227 @@
+import java.util.*;
+
+/**
+ * Testing program for DynamicShortestPaths. Applies batches of random edge
+ * changes and, after every batch, compares the cost of the path between each
+ * origin and every vertex with a MyGraph built fresh from the current edges,
+ * and checks that every path returned adds up to its cost.
+ *
+ * A few fixed batches come first, covering the cases that are easiest to get
+ * wrong: a deleted tree edge below another deleted tree edge, several changes
+ * to one edge in a batch, and a batch rejected part way through.
+ *
+ * USAGE: java TestDynamicShortestPaths [seeds] [batches] [vertices]
+ */
+
+public class TestDynamicShortestPaths {
+	// Number of problems found so far
+	private static int failures = 0;
+
+	// Number of vertices in the graph being tested, for packing edge keys
+	private static int vertexCount;
+
+	public static void main(String[] args) {
+		int seeds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		int batches = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		int n = args.length > 2 ? Integer.parseInt(args[2]) : 400;
+
+		testFixedBatches();
+		for (int seed = 0; seed < seeds; seed++) {
+			testRandomBatches(new Random(seed), n, batches);
+		}
+
+		if (failures > 0) {
+			System.out.println(failures + " problems found");
+			System.exit(1);
+		}
+		System.out.println("All checks passed, Good!");
+	}
+
+	/**
+	 * Runs the hand-made batches on a small chain with a detour
+	 */
+	private static void testFixedBatches() {
+		// a -> b -> c -> d costs 1 each, with a dearer detour a -> d
+		Vertex[] v = vertices(4);
+		Map<Long, Integer> edges = new HashMap<Long, Integer>();
+		edges.put(key(0, 1), 1);
+		edges.put(key(1, 2), 1);
+		edges.put(key(2, 3), 1);
+		edges.put(key(0, 3), 10);
+		DynamicShortestPaths paths = new DynamicShortestPaths(graph(v, edges));
+		paths.addOrigin(v[0]);
+
+		// Cut two tree edges at once, the lower one inside the upper one's
+		// subtree, so the lower cut is found after its parent was cleared
+		List<DynamicShortestPaths.EdgeChange> batch = new ArrayList<DynamicShortestPaths.EdgeChange>();
+		batch.add(DynamicShortestPaths.EdgeChange.delete(v[0], v[1]));
+		batch.add(DynamicShortestPaths.EdgeChange.delete(v[2], v[3]));
+		paths.applyChanges(batch);
+		edges.remove(key(0, 1));
+		edges.remove(key(2, 3));
+		check("nested deletes", paths, v, edges, Arrays.asList(0));
+
+		// Change one edge three times; only the net change counts
+		batch.clear();
+		batch.add(DynamicShortestPaths.EdgeChange.insert(v[0], v[1], 5));
+		batch.add(DynamicShortestPaths.EdgeChange.changeWeight(v[0], v[1], 1));
+		batch.add(DynamicShortestPaths.EdgeChange.delete(v[0], v[1]));
+		batch.add(DynamicShortestPaths.EdgeChange.insert(v[0], v[1], 2));
+		paths.applyChanges(batch);
+		edges.put(key(0, 1), 2);
+		check("repeated changes", paths, v, edges, Arrays.asList(0));
+
+		// A batch with a bad change must leave everything as it was
+		batch.clear();
+		batch.add(DynamicShortestPaths.EdgeChange.delete(v[0], v[3]));
+		batch.add(DynamicShortestPaths.EdgeChange.delete(v[3], v[0]));
+		try {
+			paths.applyChanges(batch);
+			fail("rejected batch", "deleting a missing edge was accepted");
+		} catch (IllegalArgumentException expected) {
+			// Good, nothing should have changed
+		}
+		check("rejected batch", paths, v, edges, Arrays.asList(0));
+	}
+
+	/**
+	 * Runs random batches of inserts, deletes and weight changes on a random
+	 * graph, keeping trees from a few origins
+	 */
+	private static void testRandomBatches(Random random, int n, int batches) {
+		Vertex[] v = vertices(n);
+		Map<Long, Integer> edges = new HashMap<Long, Integer>();
+		for (int i = 0; i < n * 3; i++) {
+			edges.put(key(random.nextInt(n), random.nextInt(n)), random.nextInt(20));
+		}
+		DynamicShortestPaths paths = new DynamicShortestPaths(graph(v, edges));
+		List<Integer> origins = new ArrayList<Integer>();
+		for (int i = 0; i < 8; i++) {
+			origins.add(random.nextInt(n));
+			paths.addOrigin(v[origins.get(i)]);
+		}
+
+		for (int round = 0; round < batches; round++) {
+			// Make each change against the edges as the earlier changes in
+			// the batch leave them
+			Map<Long, Integer> after = new HashMap<Long, Integer>(edges);
+			List<DynamicShortestPaths.EdgeChange> batch = new ArrayList<DynamicShortestPaths.EdgeChange>();
+			int size = 1 + random.nextInt(10);
+			for (int i = 0; i < size; i++) {
+				int from = random.nextInt(n);
+				int to = random.nextInt(n);
+
+				// Often pick an existing edge, so deletes and weight changes
+				// hit the trees
+				if (random.nextBoolean() && !after.isEmpty()) {
+					long existing = new ArrayList<Long>(after.keySet()).get(random.nextInt(after.size()));
+					from = (int) (existing / n);
+					to = (int) (existing % n);
+				}
+				long edge = key(from, to);
+				int weight = random.nextInt(20);
+				if (!after.containsKey(edge)) {
+					batch.add(DynamicShortestPaths.EdgeChange.insert(v[from], v[to], weight));
+					after.put(edge, weight);
+				} else if (random.nextBoolean()) {
+					batch.add(DynamicShortestPaths.EdgeChange.delete(v[from], v[to]));
+					after.remove(edge);
+				} else {
+					batch.add(DynamicShortestPaths.EdgeChange.changeWeight(v[from], v[to], weight));
+					after.put(edge, weight);
+				}
+			}
+			paths.applyChanges(batch);
+			edges = after;
+			check("batch " + round, paths, v, edges, origins);
+		}
+	}
+
+	/**
+	 * Compares the paths from every origin with a fresh MyGraph
+	 */
+	private static void check(String name, DynamicShortestPaths paths, Vertex[] v, Map<Long, Integer> edges,
+			List<Integer> origins) {
+		MyGraph fresh = graph(v, edges);
+		for (int origin : origins) {
+			for (int target = 0; target < v.length; target++) {
+				Path expected = fresh.shortestPath(v[origin], v[target]);
+				Path actual;
+				try {
+					actual = paths.shortestPath(v[origin], v[target]);
+				} catch (RuntimeException e) {
+					fail(name, v[origin] + " to " + v[target] + " threw " + e);
+					continue;
+				}
+				if ((expected == null) != (actual == null)) {
+					fail(name, v[origin] + " to " + v[target] + " reachable: expected " + (expected != null));
+				} else if (actual != null && actual.cost != expected.cost) {
+					fail(name, v[origin] + " to " + v[target] + " cost " + actual.cost + ", expected "
+							+ expected.cost);
+				} else if (actual != null && origin != target && sum(actual, origin, edges) != actual.cost) {
+					fail(name, v[origin] + " to " + v[target] + " path does not add up to its cost");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds up the edges of a path, which runs from its end back to origin,
+	 * or returns -1 if it uses an edge that does not exist
+	 */
+	private static int sum(Path path, int origin, Map<Long, Integer> edges) {
+		int total = 0;
+		int previous = origin;
+		List<Vertex> list = new ArrayList<Vertex>(path.vertices);
+		for (int i = list.size() - 1; i >= 0; i--) {
+			int next = Integer.parseInt(list.get(i).getLabel());
+			Integer weight = edges.get(key(previous, next));
+			if (weight == null) {
+				return -1;
+			}
+			total += weight;
+			previous = next;
+		}
+		return total;
+	}
+
+	/**
+	 * Reports a problem
+	 */
+	private static void fail(String name, String problem) {
+		failures++;
+		System.out.println("FAILED " + name + ": " + problem);
+	}
+
+	/**
+	 * Makes vertices labeled 0 ... n - 1
+	 */
+	private static Vertex[] vertices(int n) {
+		vertexCount = n;
+		Vertex[] v = new Vertex[n];
+		for (int i = 0; i < n; i++) {
+			v[i] = new Vertex("" + i);
+		}
+		return v;
+	}
+
+	/**
+	 * Packs an edge into one key
+	 */
+	private static long key(int from, int to) {
+		return (long) from * vertexCount + to;
+	}
+
+	/**
+	 * Builds a MyGraph with the given edges
+	 */
+	private static MyGraph graph(Vertex[] v, Map<Long, Integer> edges) {
+		List<Edge> e = new ArrayList<Edge>();
+		for (Map.Entry<Long, Integer> edge : edges.entrySet()) {
+			int from = (int) (edge.getKey() / v.length);
+			int to = (int) (edge.getKey() % v.length);
+			e.add(new Edge(v[from], v[to], edge.getValue()));
+		}
+		return new MyGraph(Arrays.asList(v), e);
+	}
+}